@@ -0,0 +1,146 @@
+package com.jinshuxqm.community.security.jwt;
+
+import com.jinshuxqm.community.model.ERole;
+import com.jinshuxqm.community.model.Role;
+import com.jinshuxqm.community.model.User;
+import com.jinshuxqm.community.security.services.PrincipalCache;
+import com.jinshuxqm.community.security.services.UserDetailsImpl;
+import com.jinshuxqm.community.security.services.UserDetailsServiceImpl;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AuthTokenFilter每个请求的认证开销：改造前每次重建密钥和解析器、解析两次令牌并按用户名查询用户；
+ * 改造后读取已缓存的声明并由声明直接构建用户。分别测量缓存命中（同一令牌重复请求）和未命中（每次都是新令牌）。
+ * 旧路径的数据库查询以内存实现代替，只计算用户对象的构建，实际差距比结果更大
+ *
+ * 运行：mvn -Pjmh compile exec:exec -Djmh.benchmarks=AuthTokenFilterBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuthTokenFilterBenchmark {
+
+    private static final String SECRET = "jinshuxqm_community_secret_key_very_secure_and_long_enough_for_production";
+    private static final int EXPIRATION_MS = 86400000;
+
+    // 未命中场景轮换使用的令牌数，远大于该场景的缓存容量
+    private static final int TOKEN_POOL_SIZE = 4096;
+
+    private JwtUtils cachedJwtUtils;
+    private JwtUtils uncachedJwtUtils;
+    private PrincipalCache principalCache;
+    private UserDetailsServiceImpl userDetailsService;
+
+    private String token;
+    private String[] tokenPool;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        userDetailsService = new InMemoryUserDetailsService();
+        principalCache = new PrincipalCache();
+        setField(principalCache, "userDetailsService", userDetailsService);
+        setField(principalCache, "ttlSeconds", 60L);
+        setField(principalCache, "maxSize", 10000L);
+        setField(principalCache, "jwtExpirationMs", (long) EXPIRATION_MS);
+        principalCache.init();
+
+        cachedJwtUtils = newJwtUtils(10000);
+        // 容量为0，每个令牌都重新验签和解析
+        uncachedJwtUtils = newJwtUtils(0);
+
+        token = cachedJwtUtils.generateJwtToken(authentication("bench_user"));
+        tokenPool = new String[TOKEN_POOL_SIZE];
+        for (int i = 0; i < TOKEN_POOL_SIZE; i++) {
+            tokenPool[i] = cachedJwtUtils.generateJwtToken(authentication("bench_user_" + i));
+        }
+    }
+
+    /**
+     * 改造前：validateJwtToken和getUserNameFromJwtToken各自构建密钥和解析器并解析一次，再按用户名加载用户
+     */
+    @Benchmark
+    public UserDetails legacyPath() {
+        Key key = Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8));
+        Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token);
+        Key keyAgain = Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8));
+        String username = Jwts.parserBuilder().setSigningKey(keyAgain).build()
+                .parseClaimsJws(token).getBody().getSubject();
+        return userDetailsService.loadUserByUsername(username);
+    }
+
+    @Benchmark
+    public UserDetails cachedPathHit() {
+        Claims claims = cachedJwtUtils.getValidClaims(token);
+        return principalCache.resolve(claims);
+    }
+
+    @Benchmark
+    public UserDetails cachedPathMiss() {
+        String current = tokenPool[next];
+        next = (next + 1) % TOKEN_POOL_SIZE;
+        Claims claims = uncachedJwtUtils.getValidClaims(current);
+        return principalCache.resolve(claims);
+    }
+
+    private static JwtUtils newJwtUtils(long claimsCacheSize) throws Exception {
+        JwtUtils jwtUtils = new JwtUtils();
+        setField(jwtUtils, "jwtSecret", SECRET);
+        setField(jwtUtils, "jwtExpirationMs", EXPIRATION_MS);
+        setField(jwtUtils, "claimsCacheSize", claimsCacheSize);
+        jwtUtils.init();
+        return jwtUtils;
+    }
+
+    private static UsernamePasswordAuthenticationToken authentication(String username) {
+        UserDetailsImpl principal = UserDetailsImpl.build(user(username));
+        return new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
+    }
+
+    private static User user(String username) {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername(username);
+        user.setEmail(username + "@jinshuxqm.com");
+        user.setPassword("password");
+        user.setRoles(Collections.singleton(new Role(1, ERole.ROLE_USER)));
+        return user;
+    }
+
+    private static void setField(Object target, String name, Object value) throws Exception {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    // 代替按用户名查询数据库
+    private static class InMemoryUserDetailsService extends UserDetailsServiceImpl {
+        @Override
+        public UserDetails loadUserByUsername(String username) {
+            return UserDetailsImpl.build(user(username));
+        }
+    }
+}
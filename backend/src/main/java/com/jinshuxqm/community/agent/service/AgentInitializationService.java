@@ -6,6 +6,8 @@ import com.jinshuxqm.community.model.Role;
 import com.jinshuxqm.community.model.ERole;
 import com.jinshuxqm.community.repository.UserRepository;
 import com.jinshuxqm.community.repository.RoleRepository;
+import com.jinshuxqm.community.security.services.PrincipalCache;
+import com.jinshuxqm.community.service.UserTypeaheadIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -42,6 +44,12 @@ public class AgentInitializationService {
     @Autowired
     private PasswordEncoder passwordEncoder;
     
+    @Autowired
+    private PrincipalCache principalCache;
+    
+    @Autowired
+    private UserTypeaheadIndex userTypeaheadIndex;
+    
     @Autowired
     private AgentManager agentManager;
     
@@ -128,11 +136,13 @@ public class AgentInitializationService {
             roleRepository.findByName(ERole.ROLE_USER).ifPresent(roles::add);
             agent.setRoles(roles);
             needUpdate = true;
+            principalCache.invalidate(agent.getUsername());
             logger.info("为Agent {} 添加USER角色", config.getUsername());
         }
         
         if (needUpdate) {
             userRepository.save(agent);
+            userTypeaheadIndex.onUserSaved(agent);
             logger.info("✅ 更新Agent {} 的信息完成", config.getUsername());
         }
     }
@@ -157,6 +167,7 @@ public class AgentInitializationService {
         agent.setRoles(roles);
         
         User savedAgent = userRepository.save(agent);
+        userTypeaheadIndex.onUserSaved(savedAgent);
         agentUsers.put(config.getUsername(), savedAgent);
         logger.info("✅ Agent账号 {} 创建成功，已设置USER角色", config.getUsername());
     }
@@ -15,6 +15,10 @@ import java.util.concurrent.TimeUnit;
 @Configuration
 @EnableCaching
 public class CacheConfig {
+    /**
+     * posts: 帖子详情的正文和作者信息，不含计数，计数在读取时从内存实时合并
+     * comments: 帖子评论楼层的首页，不含当前用户的点赞状态
+     */
     @Bean
     public CacheManager cacheManager() {
         CaffeineCacheManager cacheManager = new CaffeineCacheManager("posts", "comments");
@@ -5,6 +5,7 @@ import com.jinshuxqm.community.model.Role;
 import com.jinshuxqm.community.model.User;
 import com.jinshuxqm.community.repository.RoleRepository;
 import com.jinshuxqm.community.repository.UserRepository;
+import com.jinshuxqm.community.service.UserTypeaheadIndex;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.annotation.Profile;
@@ -29,6 +30,9 @@ public class DataInitializer implements CommandLineRunner {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private UserTypeaheadIndex userTypeaheadIndex;
+
     @Override
     public void run(String... args) throws Exception {
         // 清理可能存在的重复角色
@@ -133,7 +137,7 @@ public class DataInitializer implements CommandLineRunner {
         roleRepository.findByName(ERole.ROLE_ADMIN).ifPresent(roles::add);
         admin.setRoles(roles);
 
-        userRepository.save(admin);
+        userTypeaheadIndex.onUserSaved(userRepository.save(admin));
         
         System.out.println("管理员用户初始化成功！");
     }
@@ -0,0 +1,48 @@
+package com.jinshuxqm.community.config;
+
+import com.jinshuxqm.community.repository.ConversationInboxRepository;
+import com.jinshuxqm.community.repository.PrivateMessageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * 私信数据初始化
+ * 在应用启动时为历史消息补齐所属会话ID，并为已有会话补齐双方的收件箱记录，已有的数据不受影响
+ */
+@Component
+@Profile("!test") // 非测试环境下执行
+public class MessageDataInitializer implements CommandLineRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageDataInitializer.class);
+
+    @Autowired
+    private PrivateMessageRepository privateMessageRepository;
+
+    @Autowired
+    private ConversationInboxRepository conversationInboxRepository;
+
+    @Override
+    public void run(String... args) {
+        try {
+            int updated = privateMessageRepository.backfillConversationIds();
+            if (updated > 0) {
+                logger.info("已为 {} 条历史消息补齐会话ID", updated);
+            }
+        } catch (Exception e) {
+            logger.error("补齐消息会话ID失败: {}", e.getMessage(), e);
+        }
+
+        try {
+            int inserted = conversationInboxRepository.backfillMissing();
+            if (inserted > 0) {
+                logger.info("已为历史会话补齐 {} 条收件箱记录", inserted);
+            }
+        } catch (Exception e) {
+            logger.error("补齐会话收件箱失败: {}", e.getMessage(), e);
+        }
+    }
+}
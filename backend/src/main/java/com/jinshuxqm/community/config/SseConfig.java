@@ -0,0 +1,21 @@
+package com.jinshuxqm.community.config;
+
+import com.jinshuxqm.community.service.SseBroadcastBus;
+import com.jinshuxqm.community.service.impl.InMemorySseBroadcastBus;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * SSE配置
+ * sse.bus=local（默认）时使用进程内总线；多节点部署时设置为其他值，并注册基于消息中间件的SseBroadcastBus实现
+ */
+@Configuration
+public class SseConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "sse.bus", havingValue = "local", matchIfMissing = true)
+    public SseBroadcastBus sseBroadcastBus() {
+        return new InMemorySseBroadcastBus();
+    }
+}
@@ -11,6 +11,7 @@ import com.jinshuxqm.community.repository.RoleRepository;
 import com.jinshuxqm.community.repository.UserRepository;
 import com.jinshuxqm.community.security.jwt.JwtUtils;
 import com.jinshuxqm.community.security.services.UserDetailsImpl;
+import com.jinshuxqm.community.service.UserTypeaheadIndex;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -47,6 +48,9 @@ public class AuthController {
     @Autowired
     JwtUtils jwtUtils;
 
+    @Autowired
+    UserTypeaheadIndex userTypeaheadIndex;
+
     @PostMapping("/login")
     public ResponseEntity<?> authenticateUser(@Valid @RequestBody LoginRequest loginRequest) {
         Authentication authentication = authenticationManager.authenticate(
@@ -116,6 +120,7 @@ public class AuthController {
             user.setRoles(roles);
             
             userRepository.save(user);
+            userTypeaheadIndex.onUserSaved(user);
 
             return ResponseEntity.ok(new MessageResponse("User registered successfully!"));
         } catch (Exception e) {
@@ -1,6 +1,7 @@
 package com.jinshuxqm.community.controller;
 
 import com.jinshuxqm.community.dto.CommentDTO;
+import com.jinshuxqm.community.dto.CursorPageDTO;
 import com.jinshuxqm.community.dto.PagedResponseDTO;
 import com.jinshuxqm.community.exception.UnauthorizedException;
 import com.jinshuxqm.community.model.User;
@@ -29,9 +30,14 @@ public class CommentController {
     @Autowired
     private PostService postService;
 
-    // 获取帖子的评论
+    // 获取帖子的一页评论，一级评论带最早的几条回复；未传page和size时返回第一页20条，sort=top时按热度排序
     @GetMapping("/posts/{postId}/comments")
-    public ResponseEntity<?> getPostComments(@PathVariable Long postId) {
+    public ResponseEntity<?> getPostComments(
+            @PathVariable Long postId,
+            @RequestParam(required = false) Integer page,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String sort,
+            Authentication authentication) {
         try {
             // 添加参数验证
             if (postId == null) {
@@ -44,7 +50,16 @@ public class CommentController {
                     .body("帖子不存在");
             }
             
-            List<CommentDTO> comments = commentService.getCommentsByPostId(postId);
+            List<CommentDTO> comments;
+            int pageNumber = page != null ? Math.max(page, 0) : 0;
+            int pageSize = size != null ? Math.min(Math.max(size, 1), 100) : 20;
+            if ("top".equals(sort)) {
+                comments = commentService.getTopCommentThread(postId, pageNumber, pageSize, authentication);
+            } else if (sort == null || "latest".equals(sort)) {
+                comments = commentService.getCommentThread(postId, pageNumber, pageSize, authentication);
+            } else {
+                return ResponseEntity.badRequest().body("不支持的排序方式: " + sort);
+            }
             return ResponseEntity.ok(comments);
         } catch (NumberFormatException e) {
             // 处理ID格式错误
@@ -105,6 +120,17 @@ public class CommentController {
         }
     }
 
+    // 获取评论的回复，after为上一页返回的游标（一级评论的moreRepliesCursor或nextCursor）
+    @GetMapping("/comments/{commentId}/replies")
+    public ResponseEntity<CursorPageDTO<CommentDTO>> getReplies(
+            @PathVariable Long commentId,
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "20") int size,
+            Authentication authentication) {
+        
+        return ResponseEntity.ok(commentService.getReplies(commentId, after, Math.min(size, 100), authentication));
+    }
+
     // 添加回复
     @PostMapping("/comments/{commentId}/replies")
     public ResponseEntity<CommentDTO> addReply(
@@ -1,5 +1,11 @@
 package com.jinshuxqm.community.controller;
 
+import com.jinshuxqm.community.service.CommentCounterReconciler;
+import com.jinshuxqm.community.service.PrivateMessageIngestor;
+import com.jinshuxqm.community.service.ReactionEventPipeline;
+import com.jinshuxqm.community.service.SseService;
+import com.jinshuxqm.community.service.ViewCountBuffer;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -17,6 +23,21 @@ import java.util.Map;
 @RequestMapping("/api/diagnostic")
 public class DiagnosticController {
     
+    @Autowired
+    private ViewCountBuffer viewCountBuffer;
+    
+    @Autowired
+    private ReactionEventPipeline reactionEventPipeline;
+    
+    @Autowired
+    private SseService sseService;
+    
+    @Autowired
+    private PrivateMessageIngestor privateMessageIngestor;
+    
+    @Autowired
+    private CommentCounterReconciler commentCounterReconciler;
+    
     @GetMapping("/security-status")
     public ResponseEntity<Map<String, Object>> getSecurityStatus(HttpServletRequest request) {
         Map<String, Object> status = new HashMap<>();
@@ -48,6 +69,36 @@ public class DiagnosticController {
         return ResponseEntity.ok(Collections.singletonMap("message", "这是一个公开端点，任何人都可以访问"));
     }
     
+    // 浏览量写回缓冲状态，包括待写入的增量数
+    @GetMapping("/view-buffer")
+    public ResponseEntity<Map<String, Object>> viewBufferStatus() {
+        return ResponseEntity.ok(viewCountBuffer.getStats());
+    }
+    
+    // 点赞/收藏事件管道状态，包括队列积压和失败数
+    @GetMapping("/reaction-pipeline")
+    public ResponseEntity<Map<String, Object>> reactionPipelineStatus() {
+        return ResponseEntity.ok(reactionEventPipeline.getStats());
+    }
+    
+    // 私信写入管道状态，包括队列积压、批次大小和失败数
+    @GetMapping("/message-ingest")
+    public ResponseEntity<Map<String, Object>> messageIngestStatus() {
+        return ResponseEntity.ok(privateMessageIngestor.getStats());
+    }
+    
+    // 评论数校准状态，包括最近一次修正的行数
+    @GetMapping("/comment-counter")
+    public ResponseEntity<Map<String, Object>> commentCounterStatus() {
+        return ResponseEntity.ok(commentCounterReconciler.getStats());
+    }
+    
+    // SSE连接和发送队列状态，包括队列深度和丢弃的事件数
+    @GetMapping("/sse")
+    public ResponseEntity<Map<String, Object>> sseStatus() {
+        return ResponseEntity.ok(sseService.getStats());
+    }
+    
     // 这个端点需要认证，可以测试认证是否正常工作
     @GetMapping("/protected")
     public ResponseEntity<Map<String, String>> protectedEndpoint() {
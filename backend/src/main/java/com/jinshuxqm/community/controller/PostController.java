@@ -37,18 +37,25 @@ public class PostController {
     @Autowired
     private PostService postService;
 
-    // 获取所有帖子
+    // 获取所有帖子，传入cursor参数（第一页传空值）时使用游标分页，按创建时间倒序
     @GetMapping
-    public ResponseEntity<Page<PostResponse>> getAllPosts(
+    public ResponseEntity<?> getAllPosts(
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "createdAt") String sortBy,
-            @RequestParam(defaultValue = "desc") String sortDir) {
+            @RequestParam(defaultValue = "desc") String sortDir,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "false") boolean withTotal,
+            Authentication authentication) {
+        
+        if (cursor != null) {
+            return getPostsByCursor(null, cursor, size, withTotal, authentication);
+        }
         
         Sort.Direction direction = sortDir.equalsIgnoreCase("desc") ? Sort.Direction.DESC : Sort.Direction.ASC;
         Pageable pageable = PageRequest.of(page, size, Sort.by(direction, sortBy));
         
-        Page<PostResponse> posts = postService.getAllPosts(pageable);
+        Page<PostResponse> posts = postService.getAllPosts(pageable, currentUsername(authentication));
         return ResponseEntity.ok(posts);
     }
 
@@ -76,21 +83,29 @@ public class PostController {
     @GetMapping("/hot")
     public ResponseEntity<Page<PostResponse>> getHotPosts(
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size) {
+            @RequestParam(defaultValue = "10") int size,
+            Authentication authentication) {
         
         logger.info("获取热门帖子，页码：{}，大小：{}", page, size);
         Pageable pageable = PageRequest.of(page, size);
-        Page<PostResponse> hotPosts = postService.getHotPosts(pageable);
+        Page<PostResponse> hotPosts = postService.getHotPosts(pageable, currentUsername(authentication));
         
         return ResponseEntity.ok(hotPosts);
     }
 
-    // 根据标签获取帖子
+    // 根据标签获取帖子，传入cursor参数时使用游标分页（热榜除外）
     @GetMapping("/tab/{tab}")
-    public ResponseEntity<Page<PostResponse>> getPostsByTab(
+    public ResponseEntity<?> getPostsByTab(
             @PathVariable String tab,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size) {
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "false") boolean withTotal,
+            Authentication authentication) {
+        
+        if (cursor != null && !"热榜".equals(tab)) {
+            return getPostsByCursor(tab, cursor, size, withTotal, authentication);
+        }
         
         System.out.println("=== PostController调试信息 ===");
         System.out.println("接收到的tab参数: '" + tab + "'");
@@ -106,9 +121,9 @@ public class PostController {
         // 如果是热榜标签，使用热门帖子逻辑
         if ("热榜".equals(tab)) {
             logger.info("通过热榜标签获取热门帖子");
-            posts = postService.getHotPosts(pageable);
+            posts = postService.getHotPosts(pageable, currentUsername(authentication));
         } else {
-            posts = postService.getPostsByTab(tab, pageable);
+            posts = postService.getPostsByTab(tab, pageable, currentUsername(authentication));
         }
         
         System.out.println("返回帖子数量: " + posts.getTotalElements());
@@ -200,7 +215,7 @@ public class PostController {
     // 点赞帖子
     @PostMapping("/{id}/like")
     @PreAuthorize("hasRole('USER') or hasRole('MODERATOR') or hasRole('ADMIN')")
-    public synchronized ResponseEntity<Void> likePost(
+    public ResponseEntity<Void> likePost(
             @PathVariable Long id,
             Authentication authentication) {
         
@@ -213,7 +228,7 @@ public class PostController {
     // 取消点赞
     @DeleteMapping("/{id}/like")
     @PreAuthorize("hasRole('USER') or hasRole('MODERATOR') or hasRole('ADMIN')")
-    public synchronized ResponseEntity<Void> unlikePost(
+    public ResponseEntity<Void> unlikePost(
             @PathVariable Long id,
             Authentication authentication) {
         
@@ -226,7 +241,7 @@ public class PostController {
     // 收藏帖子
     @PostMapping("/{id}/favorite")
     @PreAuthorize("hasRole('USER') or hasRole('MODERATOR') or hasRole('ADMIN')")
-    public synchronized ResponseEntity<Void> favoritePost(
+    public ResponseEntity<Void> favoritePost(
             @PathVariable Long id,
             Authentication authentication) {
         
@@ -239,7 +254,7 @@ public class PostController {
     // 取消收藏
     @DeleteMapping("/{id}/favorite")
     @PreAuthorize("hasRole('USER') or hasRole('MODERATOR') or hasRole('ADMIN')")
-    public synchronized ResponseEntity<Void> unfavoritePost(
+    public ResponseEntity<Void> unfavoritePost(
             @PathVariable Long id,
             Authentication authentication) {
         
@@ -261,7 +276,8 @@ public class PostController {
     public ResponseEntity<?> searchPosts(
             @RequestParam String query,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size) {
+            @RequestParam(defaultValue = "10") int size,
+            Authentication authentication) {
         
         try {
             // 检查是否为ID搜索
@@ -281,7 +297,7 @@ public class PostController {
             
             // 如果不是ID，则执行关键词搜索
             logger.info("执行关键词搜索，关键词: {}, 页码: {}, 每页数量: {}", query, page, size);
-            Page<PostResponse> postsPage = postService.searchPosts(query, PageRequest.of(page, size));
+            Page<PostResponse> postsPage = postService.searchPosts(query, PageRequest.of(page, size), currentUsername(authentication));
             
             logger.info("关键词搜索完成，找到 {} 条结果", postsPage.getTotalElements());
             return ResponseEntity.ok(postsPage.getContent());
@@ -292,4 +308,19 @@ public class PostController {
                     .body(Map.of("error", "搜索失败: " + e.getMessage()));
         }
     }
-} 
\ No newline at end of file
+
+    // 游标分页查询，游标无效时返回400
+    private ResponseEntity<?> getPostsByCursor(String tab, String cursor, int size, boolean withTotal,
+                                               Authentication authentication) {
+        try {
+            return ResponseEntity.ok(postService.getPostsByCursor(tab, cursor, size, withTotal, currentUsername(authentication)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // 获取当前登录用户名，未登录返回null
+    private String currentUsername(Authentication authentication) {
+        return authentication != null ? authentication.getName() : null;
+    }
+}
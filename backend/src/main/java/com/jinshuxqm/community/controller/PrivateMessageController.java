@@ -1,6 +1,7 @@
 package com.jinshuxqm.community.controller;
 
 import com.jinshuxqm.community.dto.ConversationDTO;
+import com.jinshuxqm.community.dto.CursorPageDTO;
 import com.jinshuxqm.community.dto.PrivateMessageDTO;
 import com.jinshuxqm.community.dto.SendMessageRequest;
 import com.jinshuxqm.community.security.services.UserDetailsImpl;
@@ -21,6 +22,7 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.validation.Valid;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/messages")
@@ -35,11 +37,22 @@ public class PrivateMessageController {
      */
     @GetMapping("/conversations")
     @PreAuthorize("isAuthenticated()")
-    public ResponseEntity<Page<ConversationDTO>> getConversations(
+    public ResponseEntity<?> getConversations(
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size) {
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String cursor) {
         
         Long currentUserId = getCurrentUserId();
+        
+        // 传入cursor参数（第一页传空值）时使用游标分页，游标无效时返回400
+        if (cursor != null) {
+            try {
+                return ResponseEntity.ok(messageService.getUserConversationsByCursor(currentUserId, cursor, size));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+            }
+        }
+        
         Pageable pageable = PageRequest.of(page, size, Sort.by("lastMessageTime").descending());
         
         Page<ConversationDTO> conversations = messageService.getUserConversations(currentUserId, pageable);
@@ -82,6 +95,28 @@ public class PrivateMessageController {
         return ResponseEntity.ok(messages);
     }
 
+    /**
+     * 按会话获取消息历史，最新的在前
+     * before为上一页返回的nextCursor（即最早一条消息的ID），不传时从最新的消息开始并标记对方的消息为已读
+     */
+    @GetMapping("/conversations/{conversationId}/history")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<CursorPageDTO<PrivateMessageDTO>> getConversationHistory(
+            @PathVariable Long conversationId,
+            @RequestParam(required = false) Long before,
+            @RequestParam(defaultValue = "50") int size) {
+        
+        Long currentUserId = getCurrentUserId();
+        if (before == null) {
+            Long partnerId = messageService.getConversationPartnerId(currentUserId, conversationId);
+            messageService.markMessagesAsRead(currentUserId, partnerId);
+        }
+        
+        CursorPageDTO<PrivateMessageDTO> messages = messageService.getConversationHistory(
+                currentUserId, conversationId, before, Math.min(size, 100));
+        return ResponseEntity.ok(messages);
+    }
+
     /**
      * 发送私信
      */
@@ -117,12 +152,13 @@ public class PrivateMessageController {
 
     /**
      * 创建SSE连接，用于接收实时消息
+     * 浏览器断线重连时会带上Last-Event-ID，服务端据此补发期间错过的事件
      */
     @GetMapping(value = "/sse-connect", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     @PreAuthorize("isAuthenticated()")
-    public SseEmitter connect() {
+    public SseEmitter connect(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
         Long currentUserId = getCurrentUserId();
-        return sseService.createConnection(currentUserId);
+        return sseService.createConnection(currentUserId, lastEventId);
     }
 
     /**
@@ -5,11 +5,14 @@ import com.jinshuxqm.community.agent.model.AgentConfig;
 import com.jinshuxqm.community.dto.PagedResponseDTO;
 import com.jinshuxqm.community.dto.PostDTO;
 import com.jinshuxqm.community.dto.UserDTO;
+import com.jinshuxqm.community.dto.UserSuggestionDTO;
 import com.jinshuxqm.community.exception.ResourceNotFoundException;
 import com.jinshuxqm.community.model.User;
+import com.jinshuxqm.community.repository.ConversationInboxRepository;
 import com.jinshuxqm.community.repository.UserRepository;
 import com.jinshuxqm.community.service.PostService;
 import com.jinshuxqm.community.service.UserService;
+import com.jinshuxqm.community.service.UserTypeaheadIndex;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -38,6 +41,12 @@ public class UserController {
     @Autowired
     private UserService userService;
     
+    @Autowired
+    private UserTypeaheadIndex userTypeaheadIndex;
+    
+    @Autowired
+    private ConversationInboxRepository conversationInboxRepository;
+    
     @Autowired(required = false)
     private AgentManager agentManager;
 
@@ -100,16 +109,26 @@ public class UserController {
     public ResponseEntity<?> getUserPosts(
             @PathVariable Long userId,
             @RequestParam(defaultValue = "0") int page, 
-            @RequestParam(defaultValue = "10") int size) {
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "false") boolean withTotal,
+            Authentication authentication) {
         
         System.out.println("获取用户ID为 " + userId + " 的帖子");
         
         try {
+            // 传入cursor参数（第一页传空值）时使用游标分页
+            if (cursor != null) {
+                return ResponseEntity.ok(postService.getPostsByUserIdCursor(
+                        userId, cursor, size, withTotal, currentUsername(authentication)));
+            }
             // 直接调用服务方法并返回结果
-            return ResponseEntity.ok(postService.getPostsByUserId(userId, page, size));
+            return ResponseEntity.ok(postService.getPostsByUserId(userId, page, size, currentUsername(authentication)));
         } catch (ResourceNotFoundException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                 .body("用户不存在: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -124,12 +143,13 @@ public class UserController {
     public ResponseEntity<?> getUserLikedPosts(
             @PathVariable Long userId,
             @RequestParam(defaultValue = "0") int page, 
-            @RequestParam(defaultValue = "10") int size) {
+            @RequestParam(defaultValue = "10") int size,
+            Authentication authentication) {
         
         System.out.println("获取用户ID为 " + userId + " 点赞的帖子");
         
         try {
-            PagedResponseDTO<PostDTO> likedPosts = postService.getLikedPostsByUserId(userId, page, size);
+            PagedResponseDTO<PostDTO> likedPosts = postService.getLikedPostsByUserId(userId, page, size, currentUsername(authentication));
             return ResponseEntity.ok(likedPosts);
         } catch (ResourceNotFoundException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
@@ -148,13 +168,14 @@ public class UserController {
     public ResponseEntity<?> getUserFavoritedPosts(
             @PathVariable Long userId,
             @RequestParam(defaultValue = "0") int page, 
-            @RequestParam(defaultValue = "10") int size) {
+            @RequestParam(defaultValue = "10") int size,
+            Authentication authentication) {
         
         System.out.println("获取用户ID为 " + userId + " 收藏的帖子");
         
         try {
             System.out.println("正在尝试查询用户ID为" + userId + "的收藏帖子");
-            PagedResponseDTO<PostDTO> favoritedPosts = postService.getFavoritedPostsByUserId(userId, page, size);
+            PagedResponseDTO<PostDTO> favoritedPosts = postService.getFavoritedPostsByUserId(userId, page, size, currentUsername(authentication));
             return ResponseEntity.ok(favoritedPosts);
         } catch (ResourceNotFoundException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
@@ -207,6 +228,8 @@ public class UserController {
             
             // 保存更新
             User updatedUser = userRepository.save(user);
+            userTypeaheadIndex.onUserSaved(updatedUser);
+            conversationInboxRepository.updatePartnerSummary(updatedUser.getId(), updatedUser.getUsername(), updatedUser.getAvatar());
             
             // 返回更新后的信息
             Map<String, Object> response = new HashMap<>();
@@ -250,4 +273,19 @@ public class UserController {
                 .body("搜索用户失败: " + e.getMessage());
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * 用户名/昵称前缀联想，按粉丝数排序
+     */
+    @GetMapping("/autocomplete")
+    public ResponseEntity<List<UserSuggestionDTO>> autocompleteUsers(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(userTypeaheadIndex.suggest(q, Math.min(Math.max(limit, 1), UserTypeaheadIndex.MAX_LIMIT)));
+    }
+
+    // 获取当前登录用户名，未登录返回null
+    private String currentUsername(Authentication authentication) {
+        return authentication != null ? authentication.getName() : null;
+    }
+}
@@ -11,7 +11,7 @@ import java.util.List;
 import java.util.stream.Collectors;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class CommentDTO {
@@ -27,6 +27,10 @@ public class CommentDTO {
     private Long parentId;
     private UserDTO replyToUser;
     private List<CommentDTO> replies;
+    // 一级评论的回复总数，replies只包含其中最早的几条
+    private Integer replyCount;
+    // 还有更多回复时，传给回复列表接口的游标
+    private String moreRepliesCursor;
     
     public static CommentDTO fromEntity(Comment comment, boolean withReplies) {
         if (comment == null) return null;
@@ -0,0 +1,36 @@
+package com.jinshuxqm.community.dto;
+
+import com.jinshuxqm.community.model.ConversationInbox;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 会话列表游标，定位到上一页最后一个会话的(lastMessageTime, conversationId)，编码见{@link KeysetCursor}
+ */
+@Data
+@AllArgsConstructor
+public class ConversationCursor {
+
+    private LocalDateTime lastMessageTime;
+    private Long conversationId;
+
+    public static ConversationCursor of(ConversationInbox inbox) {
+        return new ConversationCursor(inbox.getLastMessageTime(), inbox.getConversationId());
+    }
+
+    /**
+     * 解析客户端传入的游标，为空时表示第一页
+     *
+     * @throws IllegalArgumentException 游标格式无效
+     */
+    public static ConversationCursor decode(String cursor) {
+        KeysetCursor keyset = KeysetCursor.decode(cursor);
+        return new ConversationCursor(keyset.getTime(), keyset.getId());
+    }
+
+    public String encode() {
+        return new KeysetCursor(lastMessageTime, conversationId).encode();
+    }
+}
@@ -1,5 +1,6 @@
 package com.jinshuxqm.community.dto;
 
+import com.jinshuxqm.community.model.ConversationInbox;
 import com.jinshuxqm.community.model.MessageConversation;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -36,7 +37,14 @@ public class ConversationDTO {
             dto.setLastMessageTime(conversation.getLastMessageTime());
         }
         
-        dto.setUnreadCount(conversation.getUnreadCount());
+        dto.setUnreadCount(conversation.getUnreadCountFor(currentUserId));
         return dto;
     }
+
+    // 从收件箱记录构建DTO，不需要加载用户和消息
+    public static ConversationDTO fromInbox(ConversationInbox inbox) {
+        return new ConversationDTO(inbox.getConversationId(), inbox.getPartnerId(), inbox.getPartnerUsername(),
+                inbox.getPartnerAvatar(), inbox.getLastMessageContent(), inbox.getLastMessageTime(),
+                inbox.getUnreadCount());
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,48 @@
+package com.jinshuxqm.community.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * 按(时间, ID)倒序分页的游标，定位到上一页最后一条记录
+ * 对外编码为URL安全的Base64字符串"时间|ID"，客户端只需原样传回；帖子和会话列表的游标共用此编码
+ */
+@Data
+@AllArgsConstructor
+public class KeysetCursor {
+
+    // 第一页的起点：晚于任何记录
+    public static final KeysetCursor START = new KeysetCursor(LocalDateTime.of(9999, 12, 31, 23, 59, 59), Long.MAX_VALUE);
+
+    private LocalDateTime time;
+    private Long id;
+
+    /**
+     * 解析客户端传入的游标，为空时表示第一页
+     *
+     * @throws IllegalArgumentException 游标格式无效
+     */
+    public static KeysetCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return START;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('|');
+            return new KeysetCursor(LocalDateTime.parse(raw.substring(0, separator)),
+                    Long.parseLong(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("无效的分页游标: " + cursor);
+        }
+    }
+
+    public String encode() {
+        String raw = time + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
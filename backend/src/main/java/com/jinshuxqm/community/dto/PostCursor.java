@@ -0,0 +1,45 @@
+package com.jinshuxqm.community.dto;
+
+import com.jinshuxqm.community.model.Post;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 帖子列表游标，定位到上一页最后一个帖子的(createdAt, id)，编码见{@link KeysetCursor}
+ */
+@Data
+@AllArgsConstructor
+public class PostCursor {
+
+    private LocalDateTime createdAt;
+    private Long id;
+
+    /**
+     * 以帖子作为下一页的起点；createdAt为空的帖子无法编码为可解析的游标，直接拒绝。
+     * 游标分页的查询条件不会返回createdAt为空的帖子，正常情况下不会出现
+     *
+     * @throws IllegalStateException 帖子的createdAt为空
+     */
+    public static PostCursor of(Post post) {
+        if (post.getCreatedAt() == null) {
+            throw new IllegalStateException("帖子缺少创建时间，无法生成分页游标: " + post.getId());
+        }
+        return new PostCursor(post.getCreatedAt(), post.getId());
+    }
+
+    /**
+     * 解析客户端传入的游标，为空时表示第一页
+     *
+     * @throws IllegalArgumentException 游标格式无效
+     */
+    public static PostCursor decode(String cursor) {
+        KeysetCursor keyset = KeysetCursor.decode(cursor);
+        return new PostCursor(keyset.getTime(), keyset.getId());
+    }
+
+    public String encode() {
+        return new KeysetCursor(createdAt, id).encode();
+    }
+}
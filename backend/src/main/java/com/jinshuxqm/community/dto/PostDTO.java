@@ -1,14 +1,12 @@
 package com.jinshuxqm.community.dto;
 
 import com.jinshuxqm.community.model.Post;
-import com.jinshuxqm.community.model.User;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.stream.Collectors;
 import java.util.ArrayList;
 
 @Data
@@ -31,7 +29,8 @@ public class PostDTO {
     private boolean favoritedByCurrentUser;
     
     // 静态工厂方法，将Post实体转换为DTO
-    public static PostDTO fromEntity(Post post, User currentUser) {
+    // 计数取自PostStats，避免为统计数量加载整个点赞/收藏集合
+    public static PostDTO fromEntity(Post post, boolean likedByCurrentUser, boolean favoritedByCurrentUser) {
         PostDTO dto = new PostDTO();
         dto.setId(post.getId());
         dto.setTitle(post.getTitle());
@@ -40,10 +39,10 @@ public class PostDTO {
         dto.setAuthor(UserDTO.fromEntity(post.getAuthor()));
         dto.setCreatedAt(post.getCreatedAt());
         dto.setUpdatedAt(post.getUpdatedAt());
-        dto.setLikes(post.getLikes().size());
+        dto.setLikes(post.getStats() != null ? post.getStats().getLikeCount() : 0);
         dto.setComments(post.getComments());
         dto.setViews(post.getViews());
-        dto.setFavorites(post.getFavorites().size());
+        dto.setFavorites(post.getStats() != null ? post.getStats().getFavoriteCount() : 0);
         
         // 设置标签
         if (post.getTags() != null) {
@@ -51,11 +50,9 @@ public class PostDTO {
         }
         
         // 设置当前用户是否点赞/收藏
-        if (currentUser != null) {
-            dto.setLikedByCurrentUser(post.getLikes().contains(currentUser));
-            dto.setFavoritedByCurrentUser(post.getFavorites().contains(currentUser));
-        }
+        dto.setLikedByCurrentUser(likedByCurrentUser);
+        dto.setFavoritedByCurrentUser(favoritedByCurrentUser);
         
         return dto;
     }
-} 
\ No newline at end of file
+}
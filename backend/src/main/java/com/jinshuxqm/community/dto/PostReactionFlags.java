@@ -0,0 +1,32 @@
+package com.jinshuxqm.community.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * 某个用户对一组帖子的点赞和收藏状态
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PostReactionFlags {
+    private Set<Long> likedPostIds = Collections.emptySet();
+    private Set<Long> favoritedPostIds = Collections.emptySet();
+
+    // 未登录用户：全部为未点赞、未收藏
+    public static PostReactionFlags none() {
+        return new PostReactionFlags();
+    }
+
+    public boolean isLiked(Long postId) {
+        return likedPostIds.contains(postId);
+    }
+
+    public boolean isFavorited(Long postId) {
+        return favoritedPostIds.contains(postId);
+    }
+}
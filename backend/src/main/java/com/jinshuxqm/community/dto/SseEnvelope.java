@@ -0,0 +1,20 @@
+package com.jinshuxqm.community.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 在节点之间广播的SSE事件，由持有目标用户连接的节点负责推送。
+ * 事件ID由推送的节点在记入补发缓冲区时分配，不随事件在节点之间传递
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SseEnvelope {
+    // 接收事件的用户ID
+    private Long userId;
+    // 事件名称，如privateMessage、unreadCount
+    private String event;
+    private Object data;
+}
@@ -0,0 +1,19 @@
+package com.jinshuxqm.community.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 用户搜索联想结果
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserSuggestionDTO {
+    private Long id;
+    private String username;
+    private String nickname;
+    private String avatar;
+    private int followerCount;
+}
@@ -10,12 +10,13 @@ import org.hibernate.annotations.UpdateTimestamp;
 import javax.persistence.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 @Entity
-@Table(name = "comments")
+@Table(name = "comments", indexes = {
+    @Index(name = "idx_comments_post_root_created", columnList = "post_id, parent_id, created_at"),
+    @Index(name = "idx_comments_parent_id", columnList = "parent_id, id")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -48,14 +49,6 @@ public class Comment {
     @JoinColumn(name = "reply_to_user_id")
     private User replyToUser;
     
-    @ManyToMany
-    @JoinTable(
-        name = "comment_likes",
-        joinColumns = @JoinColumn(name = "comment_id"),
-        inverseJoinColumns = @JoinColumn(name = "user_id")
-    )
-    private Set<User> likedByUsers = new HashSet<>();
-    
     @Column(nullable = false)
     private Integer likes = 0;
     
@@ -70,23 +63,6 @@ public class Comment {
     @Column(nullable = false)
     private LocalDateTime updatedAt;
     
-    // 添加点赞方法
-    public void addLike(User user) {
-        this.likedByUsers.add(user);
-        this.likes = this.likedByUsers.size();
-    }
-    
-    // 取消点赞方法
-    public void removeLike(User user) {
-        this.likedByUsers.remove(user);
-        this.likes = this.likedByUsers.size();
-    }
-    
-    // 检查是否被用户点赞
-    public boolean isLikedByUser(User user) {
-        return this.likedByUsers.contains(user);
-    }
-    
     // 添加回复方法
     public void addReply(Comment reply) {
         replies.add(reply);
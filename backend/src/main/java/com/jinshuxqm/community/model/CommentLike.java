@@ -0,0 +1,33 @@
+package com.jinshuxqm.community.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+
+/**
+ * 评论点赞关系，沿用原多对多关联的comment_likes表，主键为(comment_id, user_id)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "comment_likes", indexes = {
+    @Index(name = "idx_comment_likes_user_comment", columnList = "user_id, comment_id")
+})
+public class CommentLike {
+    
+    @EmbeddedId
+    private CommentLikeId id;
+    
+    @ManyToOne(fetch = FetchType.LAZY)
+    @MapsId("commentId")
+    @JoinColumn(name = "comment_id")
+    private Comment comment;
+    
+    @ManyToOne(fetch = FetchType.LAZY)
+    @MapsId("userId")
+    @JoinColumn(name = "user_id")
+    private User user;
+}
@@ -0,0 +1,24 @@
+package com.jinshuxqm.community.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+import java.io.Serializable;
+
+@Embeddable
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CommentLikeId implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    @Column(name = "comment_id")
+    private Long commentId;
+    
+    @Column(name = "user_id")
+    private Long userId;
+}
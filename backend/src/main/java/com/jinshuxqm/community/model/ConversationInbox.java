@@ -0,0 +1,54 @@
+package com.jinshuxqm.community.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 会话收件箱：每个会话为双方各保存一行，冗余对方的用户名、头像和最后一条消息，
+ * 会话列表只按(user_id, last_message_time, conversation_id)索引读取本表，不再关联用户和消息表
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "conversation_inbox",
+    uniqueConstraints = @UniqueConstraint(columnNames = {"user_id", "partner_id"}),
+    indexes = {
+        @Index(name = "idx_conversation_inbox_user_time", columnList = "user_id, last_message_time, conversation_id"),
+        @Index(name = "idx_conversation_inbox_partner", columnList = "partner_id")
+    })
+public class ConversationInbox {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // 收件箱所属用户
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "partner_id", nullable = false)
+    private Long partnerId;
+
+    @Column(name = "conversation_id", nullable = false)
+    private Long conversationId;
+
+    @Column(name = "partner_username")
+    private String partnerUsername;
+
+    @Column(name = "partner_avatar")
+    private String partnerAvatar;
+
+    @Column(name = "last_message_content")
+    private String lastMessageContent;
+
+    @Column(name = "last_message_time")
+    private LocalDateTime lastMessageTime;
+
+    // 所属用户在该会话中的未读数
+    @Column(name = "unread_count", nullable = false)
+    private int unreadCount = 0;
+}
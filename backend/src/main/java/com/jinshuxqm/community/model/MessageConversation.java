@@ -33,22 +33,34 @@ public class MessageConversation {
     @Column(name = "last_message_time")
     private LocalDateTime lastMessageTime;
 
+    // 双方未读数之和
     @Column(name = "unread_count")
     private int unreadCount = 0;
 
+    // user1收到的未读消息数
+    @Column(name = "user1_unread_count", columnDefinition = "INT NOT NULL DEFAULT 0")
+    private int user1UnreadCount = 0;
+
+    // user2收到的未读消息数
+    @Column(name = "user2_unread_count", columnDefinition = "INT NOT NULL DEFAULT 0")
+    private int user2UnreadCount = 0;
+
+    // user1已读到的最后一条消息ID
+    @Column(name = "user1_last_read_message_id")
+    private Long user1LastReadMessageId;
+
+    // user2已读到的最后一条消息ID
+    @Column(name = "user2_last_read_message_id")
+    private Long user2LastReadMessageId;
+
     // 更新最后一条消息
     public void updateLastMessage(PrivateMessage message) {
         this.lastMessage = message;
         this.lastMessageTime = message.getCreatedAt();
     }
 
-    // 增加未读数
-    public void incrementUnreadCount() {
-        this.unreadCount++;
-    }
-
-    // 重置未读数
-    public void resetUnreadCount() {
-        this.unreadCount = 0;
+    // 获取指定用户一方的未读数
+    public int getUnreadCountFor(Long userId) {
+        return user1.getId().equals(userId) ? user1UnreadCount : user2UnreadCount;
     }
 } 
\ No newline at end of file
@@ -8,7 +8,12 @@ import java.util.HashSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "posts")
+@Table(name = "posts", indexes = {
+    // 游标分页按(createdAt, id)倒序扫描
+    @Index(name = "idx_posts_created_at_id", columnList = "created_at, id"),
+    @Index(name = "idx_posts_tab_created_at_id", columnList = "tab, created_at, id"),
+    @Index(name = "idx_posts_user_created_at_id", columnList = "user_id, created_at, id")
+})
 public class Post {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
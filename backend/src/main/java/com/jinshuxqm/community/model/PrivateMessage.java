@@ -11,7 +11,12 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "private_messages")
+@Table(name = "private_messages", indexes = {
+    // 按接收者统计、标记某个发送者的未读消息
+    @Index(name = "idx_private_messages_receiver_sender_read", columnList = "receiver_id, sender_id, is_read, id"),
+    // 按会话倒序翻页读取历史消息
+    @Index(name = "idx_private_messages_conversation_id", columnList = "conversation_id, id")
+})
 public class PrivateMessage {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -25,6 +30,10 @@ public class PrivateMessage {
     @JoinColumn(name = "receiver_id", nullable = false)
     private User receiver;
 
+    // 所属会话ID
+    @Column(name = "conversation_id")
+    private Long conversationId;
+
     @Column(nullable = false)
     private String content;
 
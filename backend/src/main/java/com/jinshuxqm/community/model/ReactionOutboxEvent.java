@@ -0,0 +1,40 @@
+package com.jinshuxqm.community.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 点赞/收藏事件发件箱
+ * 事件先写入此表再进入内存队列，写入post_likes/post_favorites的同一事务中删除，
+ * 进程异常退出后启动时按ID顺序重放剩余的事件
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "reaction_outbox")
+public class ReactionOutboxEvent {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+    
+    @Column(name = "post_id", nullable = false)
+    private Long postId;
+    
+    // LIKE 或 FAVORITE
+    @Column(nullable = false, length = 16)
+    private String type;
+    
+    // true为点赞/收藏，false为取消
+    @Column(nullable = false)
+    private Boolean active;
+    
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,33 @@
+package com.jinshuxqm.community.repository;
+
+import com.jinshuxqm.community.model.CommentLike;
+import com.jinshuxqm.community.model.CommentLikeId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface CommentLikeRepository extends JpaRepository<CommentLike, CommentLikeId> {
+    
+    // 插入点赞关系，已存在时忽略，返回实际插入的行数
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO comment_likes (comment_id, user_id) VALUES (:commentId, :userId)",
+           nativeQuery = true)
+    int insertIgnore(@Param("commentId") Long commentId, @Param("userId") Long userId);
+    
+    // 删除点赞关系，返回实际删除的行数
+    @Modifying
+    @Query(value = "DELETE FROM comment_likes WHERE comment_id = :commentId AND user_id = :userId",
+           nativeQuery = true)
+    int deleteLike(@Param("commentId") Long commentId, @Param("userId") Long userId);
+    
+    // 一次查询用户在给定评论中点赞过的评论ID
+    @Query(value = "SELECT comment_id FROM comment_likes WHERE user_id = :userId AND comment_id IN (:commentIds)",
+           nativeQuery = true)
+    List<Number> findLikedCommentIds(@Param("userId") Long userId, @Param("commentIds") Collection<Long> commentIds);
+}
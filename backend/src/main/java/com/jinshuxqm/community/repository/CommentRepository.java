@@ -5,10 +5,12 @@ import com.jinshuxqm.community.model.Post;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -18,6 +20,85 @@ public interface CommentRepository extends JpaRepository<Comment, Long> {
     @Query("SELECT c FROM Comment c WHERE c.post.id = :postId AND c.parent IS NULL AND c.isDeleted = false ORDER BY c.createdAt DESC")
     Page<Comment> findByPostIdAndParentIsNullOrderByCreatedAtDesc(@Param("postId") Long postId, Pageable pageable);
     
+    // 获取一级评论并分页，同时取出作者
+    @Query(value = "SELECT c FROM Comment c JOIN FETCH c.author LEFT JOIN FETCH c.replyToUser " +
+                   "WHERE c.post.id = :postId AND c.parent IS NULL AND c.isDeleted = false ORDER BY c.createdAt DESC, c.id DESC",
+           countQuery = "SELECT COUNT(c) FROM Comment c WHERE c.post.id = :postId AND c.parent IS NULL AND c.isDeleted = false")
+    Page<Comment> findRootsWithAuthors(@Param("postId") Long postId, Pageable pageable);
+    
+    // 按热度排序的一级评论统计：[id, likes, created_at, 回复数]，热度算法与HotCommentRankingService一致
+    @Query(value = "SELECT c.id, c.likes, c.created_at, COUNT(r.id) AS reply_count " +
+                   "FROM comments c LEFT JOIN comments r ON r.parent_id = c.id AND r.is_deleted = false " +
+                   "WHERE c.post_id = :postId AND c.parent_id IS NULL AND c.is_deleted = false " +
+                   "GROUP BY c.id, c.likes, c.created_at " +
+                   "ORDER BY (c.likes * :likeWeight + COUNT(r.id) * :replyWeight) " +
+                   "/ (1 + LN(1 + GREATEST(TIMESTAMPDIFF(HOUR, c.created_at, NOW()), 0) / 24)) DESC, c.id DESC " +
+                   "LIMIT :limit OFFSET :offset",
+           nativeQuery = true)
+    List<Object[]> findTopRootStats(@Param("postId") Long postId,
+                                    @Param("likeWeight") int likeWeight,
+                                    @Param("replyWeight") int replyWeight,
+                                    @Param("limit") int limit,
+                                    @Param("offset") long offset);
+    
+    // 同findTopRootStats，排除指定的评论，用于衔接内存中已排好的前几页
+    @Query(value = "SELECT c.id, c.likes, c.created_at, COUNT(r.id) AS reply_count " +
+                   "FROM comments c LEFT JOIN comments r ON r.parent_id = c.id AND r.is_deleted = false " +
+                   "WHERE c.post_id = :postId AND c.parent_id IS NULL AND c.is_deleted = false " +
+                   "AND c.id NOT IN (:excludeIds) " +
+                   "GROUP BY c.id, c.likes, c.created_at " +
+                   "ORDER BY (c.likes * :likeWeight + COUNT(r.id) * :replyWeight) " +
+                   "/ (1 + LN(1 + GREATEST(TIMESTAMPDIFF(HOUR, c.created_at, NOW()), 0) / 24)) DESC, c.id DESC " +
+                   "LIMIT :limit OFFSET :offset",
+           nativeQuery = true)
+    List<Object[]> findTopRootStatsExcluding(@Param("postId") Long postId,
+                                             @Param("excludeIds") Collection<Long> excludeIds,
+                                             @Param("likeWeight") int likeWeight,
+                                             @Param("replyWeight") int replyWeight,
+                                             @Param("limit") int limit,
+                                             @Param("offset") long offset);
+    
+    // 单条一级评论的统计：[id, likes, created_at, 回复数]，不是未删除的一级评论时返回空
+    @Query(value = "SELECT c.id, c.likes, c.created_at, " +
+                   "(SELECT COUNT(*) FROM comments r WHERE r.parent_id = c.id AND r.is_deleted = false) AS reply_count " +
+                   "FROM comments c WHERE c.id = :commentId AND c.parent_id IS NULL AND c.is_deleted = false",
+           nativeQuery = true)
+    List<Object[]> findRootStats(@Param("commentId") Long commentId);
+    
+    // 每个父评论最早的limit条回复的ID
+    @Query(value = "SELECT id FROM (SELECT id, ROW_NUMBER() OVER (PARTITION BY parent_id ORDER BY id) AS rn " +
+                   "FROM comments WHERE parent_id IN (:parentIds) AND is_deleted = false) ranked WHERE rn <= :limit",
+           nativeQuery = true)
+    List<Number> findReplyPreviewIds(@Param("parentIds") Collection<Long> parentIds, @Param("limit") int limit);
+    
+    // 按ID批量获取评论，同时取出作者
+    @Query("SELECT c FROM Comment c JOIN FETCH c.author LEFT JOIN FETCH c.replyToUser WHERE c.id IN :ids ORDER BY c.id")
+    List<Comment> findAllWithAuthorsByIdIn(@Param("ids") Collection<Long> ids);
+    
+    // 统计每个父评论的回复数
+    @Query("SELECT c.parent.id, COUNT(c) FROM Comment c WHERE c.parent.id IN :parentIds AND c.isDeleted = false GROUP BY c.parent.id")
+    List<Object[]> countRepliesByParentIds(@Param("parentIds") Collection<Long> parentIds);
+    
+    // 游标分页获取ID大于afterId的回复，同时取出作者
+    @Query("SELECT c FROM Comment c JOIN FETCH c.author LEFT JOIN FETCH c.replyToUser " +
+           "WHERE c.parent.id = :parentId AND c.isDeleted = false AND c.id > :afterId ORDER BY c.id")
+    List<Comment> findRepliesAfter(@Param("parentId") Long parentId, @Param("afterId") Long afterId, Pageable pageable);
+    
+    // 获取评论所属帖子的ID和父评论ID：[postId, parentId]，一级评论的parentId为null
+    @Query("SELECT c.post.id, p.id FROM Comment c LEFT JOIN c.parent p WHERE c.id = :commentId")
+    List<Object[]> findPostIdAndParentIdById(@Param("commentId") Long commentId);
+    
+    // 软删除评论，已删除时不做修改，返回实际删除的行数
+    @Modifying
+    @Query(value = "UPDATE comments SET is_deleted = true, updated_at = NOW() WHERE id = :commentId AND is_deleted = false",
+           nativeQuery = true)
+    int softDelete(@Param("commentId") Long commentId);
+    
+    // 原子地调整评论点赞数，结果不小于0
+    @Modifying
+    @Query(value = "UPDATE comments SET likes = GREATEST(likes + :delta, 0) WHERE id = :commentId", nativeQuery = true)
+    int adjustLikes(@Param("commentId") Long commentId, @Param("delta") int delta);
+    
     // 获取评论的回复
     List<Comment> findByParentIdAndIsDeletedFalseOrderByCreatedAtAsc(Long parentId);
     
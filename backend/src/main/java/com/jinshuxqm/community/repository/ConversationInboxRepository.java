@@ -0,0 +1,75 @@
+package com.jinshuxqm.community.repository;
+
+import com.jinshuxqm.community.model.ConversationInbox;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ConversationInboxRepository extends JpaRepository<ConversationInbox, Long> {
+
+    // 获取用户的会话列表（分页）
+    Page<ConversationInbox> findByUserId(Long userId, Pageable pageable);
+
+    // 游标分页：获取排在(lastMessageTime, conversationId)之后的会话
+    @Query("SELECT ci FROM ConversationInbox ci WHERE ci.userId = :userId AND " +
+           "(ci.lastMessageTime < :lastMessageTime OR " +
+           "(ci.lastMessageTime = :lastMessageTime AND ci.conversationId < :conversationId)) " +
+           "ORDER BY ci.lastMessageTime DESC, ci.conversationId DESC")
+    List<ConversationInbox> findPageAfter(@Param("userId") Long userId,
+                                          @Param("lastMessageTime") LocalDateTime lastMessageTime,
+                                          @Param("conversationId") Long conversationId,
+                                          Pageable pageable);
+
+    Optional<ConversationInbox> findByUserIdAndPartnerId(Long userId, Long partnerId);
+
+    // 扣减未读数
+    @Modifying
+    @Query(value = "UPDATE conversation_inbox SET unread_count = GREATEST(unread_count - :readCount, 0) " +
+           "WHERE user_id = :userId AND partner_id = :partnerId",
+           nativeQuery = true)
+    int decrementUnreadCount(@Param("userId") Long userId,
+                             @Param("partnerId") Long partnerId,
+                             @Param("readCount") int readCount);
+
+    // 用户修改资料后同步到其他人收件箱中冗余的信息
+    @Modifying
+    @Transactional
+    @Query("UPDATE ConversationInbox ci SET ci.partnerUsername = :username, ci.partnerAvatar = :avatar " +
+           "WHERE ci.partnerId = :partnerId")
+    int updatePartnerSummary(@Param("partnerId") Long partnerId,
+                             @Param("username") String username,
+                             @Param("avatar") String avatar);
+
+    // 为缺少收件箱记录的历史会话补齐双方的记录
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT IGNORE INTO conversation_inbox (user_id, partner_id, conversation_id, partner_username, " +
+           "partner_avatar, last_message_content, last_message_time, unread_count) " +
+           "SELECT mc.user1_id, mc.user2_id, mc.id, u.username, u.avatar, pm.content, mc.last_message_time, mc.user1_unread_count " +
+           "FROM message_conversations mc JOIN users u ON u.id = mc.user2_id " +
+           "LEFT JOIN private_messages pm ON pm.id = mc.last_message_id " +
+           "UNION ALL " +
+           "SELECT mc.user2_id, mc.user1_id, mc.id, u.username, u.avatar, pm.content, mc.last_message_time, mc.user2_unread_count " +
+           "FROM message_conversations mc JOIN users u ON u.id = mc.user1_id " +
+           "LEFT JOIN private_messages pm ON pm.id = mc.last_message_id",
+           nativeQuery = true)
+    int backfillMissing();
+
+    // 按会话表同步未读数
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE conversation_inbox ci JOIN message_conversations mc ON mc.id = ci.conversation_id " +
+           "SET ci.unread_count = CASE WHEN ci.user_id = mc.user1_id THEN mc.user1_unread_count ELSE mc.user2_unread_count END",
+           nativeQuery = true)
+    int syncUnreadCounts();
+}
@@ -2,13 +2,13 @@ package com.jinshuxqm.community.repository;
 
 import com.jinshuxqm.community.model.MessageConversation;
 import com.jinshuxqm.community.model.User;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -22,11 +22,43 @@ public interface MessageConversationRepository extends JpaRepository<MessageConv
             @Param("user1") User user1,
             @Param("user2") User user2);
     
-    // 查找用户参与的所有会话
-    @Query("SELECT mc FROM MessageConversation mc WHERE " +
-           "mc.user1 = :user OR mc.user2 = :user " +
-           "ORDER BY mc.lastMessageTime DESC")
-    Page<MessageConversation> findConversationsForUser(
-            @Param("user") User user,
-            Pageable pageable);
+    // 查询会话双方的用户ID，不加载用户实体
+    @Query("SELECT mc.user1.id, mc.user2.id FROM MessageConversation mc WHERE mc.id = :conversationId")
+    List<Object[]> findParticipantIds(@Param("conversationId") Long conversationId);
+    
+    // 查询会话的ID和最后一条消息ID，不加载用户和消息实体
+    @Query("SELECT mc.id, mc.lastMessage.id FROM MessageConversation mc " +
+           "WHERE mc.user1.id = :user1Id AND mc.user2.id = :user2Id")
+    List<Object[]> findReadStateByUserIds(@Param("user1Id") Long user1Id, @Param("user2Id") Long user2Id);
+    
+    // 扣减用户一方的未读数并推进已读位置
+    @Modifying
+    @Query(value = "UPDATE message_conversations SET " +
+           "user1_unread_count = CASE WHEN user1_id = :userId THEN GREATEST(user1_unread_count - :readCount, 0) ELSE user1_unread_count END, " +
+           "user2_unread_count = CASE WHEN user2_id = :userId THEN GREATEST(user2_unread_count - :readCount, 0) ELSE user2_unread_count END, " +
+           "user1_last_read_message_id = CASE WHEN user1_id = :userId THEN GREATEST(COALESCE(user1_last_read_message_id, 0), :maxMessageId) ELSE user1_last_read_message_id END, " +
+           "user2_last_read_message_id = CASE WHEN user2_id = :userId THEN GREATEST(COALESCE(user2_last_read_message_id, 0), :maxMessageId) ELSE user2_last_read_message_id END, " +
+           "unread_count = user1_unread_count + user2_unread_count " +
+           "WHERE id = :conversationId",
+           nativeQuery = true)
+    int markReadForUser(@Param("conversationId") Long conversationId,
+                        @Param("userId") Long userId,
+                        @Param("readCount") int readCount,
+                        @Param("maxMessageId") Long maxMessageId);
+    
+    // 统计用户在所有会话中的未读消息数
+    @Query("SELECT COALESCE(SUM(CASE WHEN mc.user1.id = :userId THEN mc.user1UnreadCount ELSE mc.user2UnreadCount END), 0) " +
+           "FROM MessageConversation mc WHERE mc.user1.id = :userId OR mc.user2.id = :userId")
+    long sumUnreadCountForUser(@Param("userId") Long userId);
+    
+    // 根据消息表重新计算每个会话双方的未读数
+    @Modifying
+    @Query(value = "UPDATE message_conversations mc SET " +
+           "mc.user1_unread_count = (SELECT COUNT(*) FROM private_messages pm " +
+           "  WHERE pm.receiver_id = mc.user1_id AND pm.sender_id = mc.user2_id AND pm.is_read = false), " +
+           "mc.user2_unread_count = (SELECT COUNT(*) FROM private_messages pm " +
+           "  WHERE pm.receiver_id = mc.user2_id AND pm.sender_id = mc.user1_id AND pm.is_read = false), " +
+           "mc.unread_count = mc.user1_unread_count + mc.user2_unread_count",
+           nativeQuery = true)
+    int recalculateUnreadCounts();
 } 
\ No newline at end of file
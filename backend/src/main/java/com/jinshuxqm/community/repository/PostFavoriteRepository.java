@@ -4,8 +4,11 @@ import com.jinshuxqm.community.model.Post;
 import com.jinshuxqm.community.model.PostFavorite;
 import com.jinshuxqm.community.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -21,6 +24,14 @@ public interface PostFavoriteRepository extends JpaRepository<PostFavorite, Long
     // 获取用户收藏的所有帖子
     List<PostFavorite> findByUser(User user);
     
+    // 批量查询用户在给定帖子中已收藏的帖子ID
+    @Query("SELECT pf.post.id FROM PostFavorite pf WHERE pf.user.id = :userId AND pf.post.id IN :postIds")
+    List<Long> findFavoritedPostIds(@Param("userId") Long userId, @Param("postIds") Collection<Long> postIds);
+    
+    // 查询用户收藏的全部帖子ID
+    @Query("SELECT pf.post.id FROM PostFavorite pf WHERE pf.user.id = :userId")
+    List<Long> findAllFavoritedPostIds(@Param("userId") Long userId);
+    
     // 删除特定用户对特定帖子的收藏
     void deleteByUserAndPost(User user, Post post);
 } 
\ No newline at end of file
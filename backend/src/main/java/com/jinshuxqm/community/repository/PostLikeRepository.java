@@ -4,8 +4,11 @@ import com.jinshuxqm.community.model.Post;
 import com.jinshuxqm.community.model.PostLike;
 import com.jinshuxqm.community.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -21,6 +24,14 @@ public interface PostLikeRepository extends JpaRepository<PostLike, Long> {
     // 获取用户点赞的所有帖子
     List<PostLike> findByUser(User user);
     
+    // 批量查询用户在给定帖子中已点赞的帖子ID
+    @Query("SELECT pl.post.id FROM PostLike pl WHERE pl.user.id = :userId AND pl.post.id IN :postIds")
+    List<Long> findLikedPostIds(@Param("userId") Long userId, @Param("postIds") Collection<Long> postIds);
+    
+    // 查询用户点赞的全部帖子ID
+    @Query("SELECT pl.post.id FROM PostLike pl WHERE pl.user.id = :userId")
+    List<Long> findAllLikedPostIds(@Param("userId") Long userId);
+    
     // 删除特定用户对特定帖子的点赞
     void deleteByUserAndPost(User user, Post post);
 } 
\ No newline at end of file
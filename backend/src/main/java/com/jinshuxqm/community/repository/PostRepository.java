@@ -11,6 +11,7 @@ import org.springframework.stereotype.Repository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -39,11 +40,43 @@ public interface PostRepository extends JpaRepository<Post, Long> {
     @Query("SELECT DISTINCT p FROM Post p JOIN p.favorites f WHERE f.user.id = :userId")
     Page<Post> findPostsFavoritedByUser(@Param("userId") Long userId, Pageable pageable);
 
-    // 添加此方法
-    @Modifying
-    @Transactional
-    @Query("UPDATE PostStats ps SET ps.viewCount = ps.viewCount + 1 WHERE ps.post.id = :postId")
-    int incrementViewCount(@Param("postId") Long postId);
+    // 游标分页：按(createdAt, id)倒序取游标之后的帖子，不统计总数
+    @Query("SELECT p FROM Post p JOIN FETCH p.author LEFT JOIN FETCH p.stats " +
+           "WHERE p.createdAt < :createdAt OR (p.createdAt = :createdAt AND p.id < :id) " +
+           "ORDER BY p.createdAt DESC, p.id DESC")
+    List<Post> findPageAfter(@Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Pageable pageable);
+
+    // 游标分页：指定标签
+    @Query("SELECT p FROM Post p JOIN FETCH p.author LEFT JOIN FETCH p.stats " +
+           "WHERE p.tab = :tab AND (p.createdAt < :createdAt OR (p.createdAt = :createdAt AND p.id < :id)) " +
+           "ORDER BY p.createdAt DESC, p.id DESC")
+    List<Post> findPageByTabAfter(@Param("tab") String tab, @Param("createdAt") LocalDateTime createdAt,
+                                  @Param("id") Long id, Pageable pageable);
+
+    // 游标分页：指定作者
+    @Query("SELECT p FROM Post p JOIN FETCH p.author LEFT JOIN FETCH p.stats " +
+           "WHERE p.author.id = :authorId AND (p.createdAt < :createdAt OR (p.createdAt = :createdAt AND p.id < :id)) " +
+           "ORDER BY p.createdAt DESC, p.id DESC")
+    List<Post> findPageByAuthorIdAfter(@Param("authorId") Long authorId, @Param("createdAt") LocalDateTime createdAt,
+                                       @Param("id") Long id, Pageable pageable);
+
+    long countByTab(String tab);
+
+    long countByAuthorId(Long authorId);
+
+    // 热榜索引加载：帖子ID、创建时间及各项统计
+    @Query("SELECT p.id, p.createdAt, s.viewCount, s.likeCount, s.favoriteCount, s.commentCount " +
+           "FROM Post p LEFT JOIN p.stats s")
+    List<Object[]> findAllHeatStats();
+
+    // 按ID顺序分批遍历帖子ID
+    @Query("SELECT p.id FROM Post p WHERE p.id > :afterId ORDER BY p.id")
+    List<Long> findIdsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    // 按ID批量查询帖子，同时抓取作者、统计和标签
+    @Query("SELECT DISTINCT p FROM Post p JOIN FETCH p.author LEFT JOIN FETCH p.stats LEFT JOIN FETCH p.tags " +
+           "WHERE p.id IN :ids")
+    List<Post> findAllWithDetailsByIdIn(@Param("ids") List<Long> ids);
 
     // 搜索帖子
     Page<Post> findByTitleContainingOrContentContaining(String title, String content, Pageable pageable);
@@ -56,6 +89,16 @@ public interface PostRepository extends JpaRepository<Post, Long> {
     @Query("UPDATE PostStats ps SET ps.likeCount = :likesCount WHERE ps.post.id = :postId")
     void updateLikes(@Param("postId") Long postId, @Param("likesCount") int likesCount);
 
+    /**
+     * 原子地调整帖子的评论数。post_stats为权威计数，posts.comments在同一语句中同步，结果不小于0
+     */
+    @Modifying
+    @Query(value = "UPDATE posts p LEFT JOIN post_stats ps ON ps.post_id = p.id " +
+                   "SET p.comments = GREATEST(p.comments + :delta, 0), " +
+                   "ps.comment_count = GREATEST(ps.comment_count + :delta, 0) " +
+                   "WHERE p.id = :postId", nativeQuery = true)
+    int adjustCommentCount(@Param("postId") Long postId, @Param("delta") int delta);
+
     /**
      * 更新帖子的评论数量
      */
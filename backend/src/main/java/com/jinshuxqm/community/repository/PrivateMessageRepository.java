@@ -1,5 +1,6 @@
 package com.jinshuxqm.community.repository;
 
+import com.jinshuxqm.community.dto.PrivateMessageDTO;
 import com.jinshuxqm.community.model.PrivateMessage;
 import com.jinshuxqm.community.model.User;
 import org.springframework.data.domain.Page;
@@ -9,6 +10,7 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
@@ -25,16 +27,36 @@ public interface PrivateMessageRepository extends JpaRepository<PrivateMessage,
             @Param("user2") User user2,
             Pageable pageable);
     
+    // 按会话获取ID小于beforeId的消息，最新的在前，直接投影为DTO
+    @Query("SELECT new com.jinshuxqm.community.dto.PrivateMessageDTO(pm.id, s.id, s.username, s.avatar, " +
+           "r.id, r.username, r.avatar, pm.content, pm.read, pm.createdAt) " +
+           "FROM PrivateMessage pm JOIN pm.sender s JOIN pm.receiver r " +
+           "WHERE pm.conversationId = :conversationId AND pm.id < :beforeId " +
+           "ORDER BY pm.id DESC")
+    List<PrivateMessageDTO> findHistoryBefore(@Param("conversationId") Long conversationId,
+                                              @Param("beforeId") Long beforeId,
+                                              Pageable pageable);
+    
+    // 为缺少会话ID的历史消息补齐会话ID
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE private_messages pm JOIN message_conversations mc ON " +
+           "(mc.user1_id = pm.sender_id AND mc.user2_id = pm.receiver_id) OR " +
+           "(mc.user1_id = pm.receiver_id AND mc.user2_id = pm.sender_id) " +
+           "SET pm.conversation_id = mc.id WHERE pm.conversation_id IS NULL",
+           nativeQuery = true)
+    int backfillConversationIds();
+    
     // 获取用户的所有未读消息
     List<PrivateMessage> findByReceiverAndReadFalse(User receiver);
     
-    // 获取指定用户之间的未读消息
-    List<PrivateMessage> findBySenderAndReceiverAndReadFalse(User sender, User receiver);
-    
-    // 批量将消息标记为已读
+    // 将发送者发给接收者、ID不超过maxMessageId的未读消息标记为已读，返回标记的条数
     @Modifying
-    @Query("UPDATE PrivateMessage pm SET pm.read = true WHERE pm.id IN :ids")
-    void markMessagesAsRead(@Param("ids") List<Long> messageIds);
+    @Query("UPDATE PrivateMessage pm SET pm.read = true WHERE pm.receiver.id = :receiverId " +
+           "AND pm.sender.id = :senderId AND pm.read = false AND pm.id <= :maxMessageId")
+    int markMessagesAsRead(@Param("receiverId") Long receiverId,
+                           @Param("senderId") Long senderId,
+                           @Param("maxMessageId") Long maxMessageId);
     
     // 获取两个用户之间的最后一条消息
     @Query("SELECT pm FROM PrivateMessage pm WHERE " +
@@ -28,6 +28,10 @@ public interface UserFollowRepository extends JpaRepository<UserFollow, UserFoll
     @Query("SELECT COUNT(uf) FROM UserFollow uf WHERE uf.follower.id = :userId")
     Long countFollowingByUserId(Long userId);
     
+    // Count followers of every user: [followeeId, count]
+    @Query("SELECT uf.followee.id, COUNT(uf) FROM UserFollow uf GROUP BY uf.followee.id")
+    List<Object[]> countFollowersGroupByFollowee();
+    
     // Delete a follow relationship
     void deleteByFollowerIdAndFolloweeId(Long followerId, Long followeeId);
 } 
\ No newline at end of file
@@ -13,6 +13,10 @@ import java.util.Optional;
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByUsername(String username);
     
+    // 只查询用户ID，不加载用户实体
+    @Query("SELECT u.id FROM User u WHERE u.username = :username")
+    Optional<Long> findIdByUsername(@Param("username") String username);
+    
     Optional<User> findByEmail(String email);
     
     Boolean existsByUsername(String username);
@@ -25,4 +29,8 @@ public interface UserRepository extends JpaRepository<User, Long> {
     // 通过用户名或昵称搜索用户
     @Query("SELECT u FROM User u WHERE LOWER(u.username) LIKE LOWER(CONCAT('%', :query, '%')) OR LOWER(u.nickname) LIKE LOWER(CONCAT('%', :query, '%'))")
     List<User> searchByUsernameOrNickname(@Param("query") String query);
+    
+    // 联想索引加载：用户ID、用户名、昵称、头像
+    @Query("SELECT u.id, u.username, u.nickname, u.avatar FROM User u")
+    List<Object[]> findAllSummaries();
 } 
\ No newline at end of file
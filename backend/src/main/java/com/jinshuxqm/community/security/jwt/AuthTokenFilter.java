@@ -1,6 +1,7 @@
 package com.jinshuxqm.community.security.jwt;
 
-import com.jinshuxqm.community.security.services.UserDetailsServiceImpl;
+import com.jinshuxqm.community.security.services.PrincipalCache;
+import io.jsonwebtoken.Claims;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -22,7 +23,7 @@ public class AuthTokenFilter extends OncePerRequestFilter {
     private JwtUtils jwtUtils;
 
     @Autowired
-    private UserDetailsServiceImpl userDetailsService;
+    private PrincipalCache principalCache;
 
     private static final Logger logger = LoggerFactory.getLogger(AuthTokenFilter.class);
 
@@ -31,10 +32,11 @@ public class AuthTokenFilter extends OncePerRequestFilter {
             throws ServletException, IOException {
         try {
             String jwt = parseJwt(request);
-            if (jwt != null && jwtUtils.validateJwtToken(jwt)) {
-                String username = jwtUtils.getUserNameFromJwtToken(jwt);
-
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+            // 一次验证同时取得声明，重复请求的令牌直接命中缓存
+            Claims claims = jwt != null ? jwtUtils.getValidClaims(jwt) : null;
+            // 用户直接由令牌中的声明构建，不再每个请求查询数据库
+            UserDetails userDetails = claims != null ? principalCache.resolve(claims) : null;
+            if (userDetails != null) {
                 UsernamePasswordAuthenticationToken authentication =
                         new UsernamePasswordAuthenticationToken(
                                 userDetails,
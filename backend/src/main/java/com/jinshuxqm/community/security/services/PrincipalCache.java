@@ -0,0 +1,82 @@
+package com.jinshuxqm.community.security.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.jsonwebtoken.Claims;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 根据JWT声明构建当前用户，避免每个请求都查询用户和角色。
+ * 令牌中带有用户ID和角色时直接构建；旧格式的令牌从数据库加载，结果短时间缓存。
+ * 用户角色或密码变更后调用invalidate，之前签发的令牌将不再被接受（只在当前实例内存中生效）
+ */
+@Service
+public class PrincipalCache {
+
+    public static final String CLAIM_USER_ID = "uid";
+    public static final String CLAIM_ROLES = "roles";
+
+    @Autowired
+    private UserDetailsServiceImpl userDetailsService;
+
+    @Value("${security.principal-cache-ttl-seconds:60}")
+    private long ttlSeconds;
+
+    @Value("${security.principal-cache-size:10000}")
+    private long maxSize;
+
+    @Value("${jwt.expiration}")
+    private long jwtExpirationMs;
+
+    // 用户名 -> 从数据库加载的用户，用于不带用户ID和角色的旧令牌
+    private Cache<String, UserDetailsImpl> loadedPrincipals;
+
+    // 用户名 -> 失效时间（取整到秒），不晚于该时间签发的令牌不再被接受；保留到这期间签发的令牌全部过期为止
+    private Cache<String, Long> notBefore;
+
+    @PostConstruct
+    public void init() {
+        loadedPrincipals = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build();
+        notBefore = Caffeine.newBuilder()
+                .expireAfterWrite(jwtExpirationMs, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * 根据已验证的令牌声明获取用户，令牌已被invalidate作废时返回null
+     */
+    public UserDetailsImpl resolve(Claims claims) {
+        String username = claims.getSubject();
+        Long invalidatedAt = notBefore.getIfPresent(username);
+        if (invalidatedAt != null && (claims.getIssuedAt() == null || claims.getIssuedAt().getTime() <= invalidatedAt)) {
+            return null;
+        }
+
+        Number userId = claims.get(CLAIM_USER_ID, Number.class);
+        Collection<?> roles = claims.get(CLAIM_ROLES, List.class);
+        if (userId != null && roles != null) {
+            return UserDetailsImpl.fromClaims(userId.longValue(), username, roles);
+        }
+        return loadedPrincipals.get(username, name -> (UserDetailsImpl) userDetailsService.loadUserByUsername(name));
+    }
+
+    /**
+     * 用户角色或密码变更后调用，之前签发的令牌作废，需要重新登录
+     */
+    public void invalidate(String username) {
+        // 令牌的签发时间只精确到秒，同一秒内早于本次调用签发的令牌同样作废（代价是这一秒内新签发的令牌也需重新登录）
+        notBefore.put(username, new Date().getTime() / 1000 * 1000);
+        loadedPrincipals.invalidate(username);
+    }
+}
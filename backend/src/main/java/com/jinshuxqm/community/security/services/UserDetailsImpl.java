@@ -51,6 +51,15 @@ public class UserDetailsImpl implements UserDetails {
                 authorities);
     }
 
+    // 根据JWT中的用户ID和角色构建，不含邮箱、密码和头像
+    public static UserDetailsImpl fromClaims(Long id, String username, Collection<?> roles) {
+        List<GrantedAuthority> authorities = roles.stream()
+                .map(role -> new SimpleGrantedAuthority(String.valueOf(role)))
+                .collect(Collectors.toList());
+
+        return new UserDetailsImpl(id, username, null, null, null, authorities);
+    }
+
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
         return authorities;
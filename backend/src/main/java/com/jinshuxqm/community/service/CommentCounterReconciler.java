@@ -0,0 +1,82 @@
+package com.jinshuxqm.community.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 帖子评论数校准
+ * 评论数由发表、删除评论时的增量语句维护，定时按帖子ID分段与评论表的实际数量比对，
+ * 只修正不一致的行，每段一条语句，避免长时间锁住大量帖子
+ */
+@Service
+public class CommentCounterReconciler {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommentCounterReconciler.class);
+
+    // 以评论表统计结果为准，同时修正post_stats和posts两处计数
+    private static final String RECONCILE_SQL =
+            "UPDATE posts p " +
+            "LEFT JOIN post_stats ps ON ps.post_id = p.id " +
+            "LEFT JOIN (SELECT post_id, COUNT(*) AS cnt FROM comments " +
+            "           WHERE is_deleted = false AND post_id BETWEEN ? AND ? GROUP BY post_id) c " +
+            "       ON c.post_id = p.id " +
+            "SET p.comments = COALESCE(c.cnt, 0), ps.comment_count = COALESCE(c.cnt, 0) " +
+            "WHERE p.id BETWEEN ? AND ? " +
+            "  AND (p.comments <> COALESCE(c.cnt, 0) OR ps.comment_count <> COALESCE(c.cnt, 0))";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${comment-counter.reconcile-batch-size:1000}")
+    private long batchSize;
+
+    private volatile long lastFixedRows;
+    private volatile LocalDateTime lastRunTime;
+
+    /**
+     * 定时校准所有帖子的评论数
+     */
+    @Scheduled(fixedDelayString = "${comment-counter.reconcile-interval-ms:3600000}",
+               initialDelayString = "${comment-counter.reconcile-initial-delay-ms:60000}")
+    public void reconcile() {
+        try {
+            long start = System.currentTimeMillis();
+            Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM posts", Long.class);
+            long fixed = 0;
+            if (maxId != null) {
+                for (long from = 1; from <= maxId; from += batchSize) {
+                    long to = from + batchSize - 1;
+                    fixed += jdbcTemplate.update(RECONCILE_SQL, from, to, from, to);
+                }
+            }
+            lastFixedRows = fixed;
+            lastRunTime = LocalDateTime.now();
+            if (fixed > 0) {
+                logger.warn("评论数校准完成，修正 {} 行，耗时 {} ms", fixed, System.currentTimeMillis() - start);
+            } else {
+                logger.info("评论数校准完成，无需修正，耗时 {} ms", System.currentTimeMillis() - start);
+            }
+        } catch (Exception e) {
+            logger.error("评论数校准失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 最近一次校准的结果，用于诊断接口
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("lastFixedRows", lastFixedRows);
+        stats.put("lastRunTime", lastRunTime);
+        return stats;
+    }
+}
@@ -1,6 +1,7 @@
 package com.jinshuxqm.community.service;
 
 import com.jinshuxqm.community.dto.CommentDTO;
+import com.jinshuxqm.community.dto.CursorPageDTO;
 import com.jinshuxqm.community.dto.PagedResponseDTO;
 import com.jinshuxqm.community.model.User;
 import org.springframework.security.core.Authentication;
@@ -8,6 +9,9 @@ import java.util.List;
 
 public interface CommentService {
     PagedResponseDTO<CommentDTO> getCommentsByPostId(Long postId, int page, int size, Authentication authentication);
+    List<CommentDTO> getCommentThread(Long postId, int page, int size, Authentication authentication);
+    List<CommentDTO> getTopCommentThread(Long postId, int page, int size, Authentication authentication);
+    CursorPageDTO<CommentDTO> getReplies(Long commentId, Long afterId, int size, Authentication authentication);
     CommentDTO createComment(Long postId, CommentDTO commentDTO, Authentication authentication);
     void deleteComment(Long commentId, Authentication authentication);
     void likeComment(Long commentId, Authentication authentication);
@@ -0,0 +1,99 @@
+package com.jinshuxqm.community.service;
+
+import com.jinshuxqm.community.dto.CommentDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 帖子评论楼层首页缓存
+ * 按帖子ID缓存组装好的前若干条一级评论及其回复预览，不含当前用户的点赞状态，所有用户共享。
+ * 发表、删除评论以及点赞、取消点赞后整体失效，下次访问重新加载；
+ * 不在缓存中原地修改点赞数，否则修改提交后才完成的加载已包含这次点赞，会被重复计入。
+ * 缓存中的对象在请求之间共享，读取时返回副本
+ */
+@Service
+public class CommentThreadCache {
+
+    private static final String CACHE_NAME = "comments";
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private CommentThreadLoader commentThreadLoader;
+
+    // 每个帖子缓存的一级评论条数
+    @Value("${comment-thread.cached-roots:100}")
+    private int cachedRoots;
+
+    private Cache cache;
+
+    @PostConstruct
+    public void init() {
+        cache = cacheManager.getCache(CACHE_NAME);
+    }
+
+    /**
+     * 从缓存获取帖子最前面的limit条一级评论。
+     * 缓存未命中时加载首页；请求的条数超出缓存范围时返回null，由调用方查询数据库
+     */
+    public List<CommentDTO> getFirstPage(Long postId, int limit) {
+        CachedThread thread = get(postId);
+        if (limit > thread.roots.size() && !thread.complete) {
+            return null;
+        }
+        int count = Math.min(limit, thread.roots.size());
+        return thread.roots.subList(0, count).stream()
+                .map(CommentThreadCache::copyOf)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 帖子的评论发生增删或点赞数变化后使缓存失效，会等待同一帖子正在进行的加载完成后再移除
+     */
+    public void evict(Long postId) {
+        cache.evict(postId);
+    }
+
+    private CachedThread get(Long postId) {
+        return cache.get(postId, () -> {
+            Page<CommentDTO> page = commentThreadLoader.loadRoots(postId, PageRequest.of(0, cachedRoots));
+            return new CachedThread(page.getContent(), !page.hasNext());
+        });
+    }
+
+    // 复制评论及其回复预览，调用方可以自由设置点赞状态
+    private static CommentDTO copyOf(CommentDTO source) {
+        CommentDTO copy = source.toBuilder().build();
+        if (source.getReplies() != null) {
+            copy.setReplies(source.getReplies().stream()
+                    .map(reply -> reply.toBuilder().build())
+                    .collect(Collectors.toList()));
+        }
+        return copy;
+    }
+
+    /**
+     * 缓存条目：帖子最前面的一级评论，complete表示已包含该帖子的全部一级评论
+     */
+    private static class CachedThread {
+        private final List<CommentDTO> roots;
+        private final boolean complete;
+
+        CachedThread(List<CommentDTO> roots, boolean complete) {
+            this.roots = Collections.unmodifiableList(new ArrayList<>(roots));
+            this.complete = complete;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.jinshuxqm.community.service;
+
+import com.jinshuxqm.community.dto.CommentDTO;
+import com.jinshuxqm.community.dto.CursorPageDTO;
+import com.jinshuxqm.community.model.Comment;
+import com.jinshuxqm.community.repository.CommentRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 评论楼层加载
+ * 一页一级评论及其回复预览用固定次数的查询取出：一级评论（带作者）、每条一级评论最早的几条回复的ID、
+ * 这些回复（带作者）、各一级评论的回复数，然后在内存中组装成树。
+ * 回复超过预览条数时返回游标，其余回复通过回复列表接口按游标分页获取
+ */
+@Service
+public class CommentThreadLoader {
+
+    @Autowired
+    private CommentRepository commentRepository;
+
+    @Value("${comment-thread.reply-preview-size:5}")
+    private int replyPreviewSize;
+
+    /**
+     * 加载一页一级评论，每条带最早的几条回复和回复总数，不含当前用户的点赞状态
+     */
+    @Transactional(readOnly = true)
+    public Page<CommentDTO> loadRoots(Long postId, Pageable pageable) {
+        Page<Comment> roots = commentRepository.findRootsWithAuthors(postId, pageable);
+        if (roots.isEmpty()) {
+            return roots.map(root -> CommentDTO.fromEntity(root, false));
+        }
+
+        Map<Long, CommentDTO> dtos = toThreadDTOs(roots.getContent());
+        return roots.map(root -> dtos.get(root.getId()));
+    }
+
+    /**
+     * 按给定顺序加载一级评论，每条带最早的几条回复和回复总数，已不存在的评论被跳过
+     */
+    @Transactional(readOnly = true)
+    public List<CommentDTO> loadRootsByIds(List<Long> rootIds) {
+        if (rootIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Comment> roots = commentRepository.findAllWithAuthorsByIdIn(rootIds).stream()
+                .filter(root -> !root.getIsDeleted() && root.getParent() == null)
+                .collect(Collectors.toList());
+        Map<Long, CommentDTO> dtos = toThreadDTOs(roots);
+        return rootIds.stream()
+                .map(dtos::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    // 为一组一级评论批量取出回复预览和回复数，返回评论ID -> DTO
+    private Map<Long, CommentDTO> toThreadDTOs(List<Comment> roots) {
+        Set<Long> rootIds = roots.stream()
+                .map(Comment::getId)
+                .collect(Collectors.toCollection(HashSet::new));
+
+        Map<Long, Long> replyCounts = new HashMap<>();
+        for (Object[] row : commentRepository.countRepliesByParentIds(rootIds)) {
+            replyCounts.put((Long) row[0], ((Number) row[1]).longValue());
+        }
+
+        // 父评论ID -> 回复预览，按ID升序即按时间先后
+        Map<Long, List<CommentDTO>> previews = new HashMap<>();
+        if (!replyCounts.isEmpty()) {
+            List<Long> previewIds = commentRepository.findReplyPreviewIds(replyCounts.keySet(), replyPreviewSize).stream()
+                    .map(Number::longValue)
+                    .collect(Collectors.toList());
+            if (!previewIds.isEmpty()) {
+                for (Comment reply : commentRepository.findAllWithAuthorsByIdIn(previewIds)) {
+                    previews.computeIfAbsent(reply.getParent().getId(), id -> new ArrayList<>())
+                            .add(CommentDTO.fromEntity(reply, false));
+                }
+            }
+        }
+
+        Map<Long, CommentDTO> dtos = new HashMap<>();
+        for (Comment root : roots) {
+            CommentDTO dto = CommentDTO.fromEntity(root, false);
+            List<CommentDTO> replies = previews.getOrDefault(root.getId(), new ArrayList<>());
+            long replyCount = replyCounts.getOrDefault(root.getId(), 0L);
+            dto.setReplies(replies);
+            dto.setReplyCount((int) replyCount);
+            if (replyCount > replies.size() && !replies.isEmpty()) {
+                dto.setMoreRepliesCursor(String.valueOf(replies.get(replies.size() - 1).getId()));
+            }
+            dtos.put(root.getId(), dto);
+        }
+        return dtos;
+    }
+
+    /**
+     * 按游标分页加载一条评论的回复，afterId为空时从最早的回复开始
+     */
+    @Transactional(readOnly = true)
+    public CursorPageDTO<CommentDTO> loadReplies(Long parentId, Long afterId, int size) {
+        size = Math.max(size, 1);
+        // 多取一条用于判断是否还有下一页
+        List<Comment> rows = commentRepository.findRepliesAfter(parentId, afterId != null ? afterId : 0L,
+                PageRequest.of(0, size + 1));
+
+        boolean hasNext = rows.size() > size;
+        List<Comment> page = hasNext ? rows.subList(0, size) : rows;
+        List<CommentDTO> replies = page.stream()
+                .map(reply -> CommentDTO.fromEntity(reply, false))
+                .collect(Collectors.toList());
+        String nextCursor = hasNext ? String.valueOf(page.get(page.size() - 1).getId()) : null;
+        return new CursorPageDTO<>(replies, nextCursor, hasNext, size, null);
+    }
+
+    /**
+     * 收集一级评论及其回复预览的ID，用于批量查询点赞状态
+     */
+    public static Collection<Long> collectIds(List<CommentDTO> comments) {
+        if (comments.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Set<Long> ids = new HashSet<>();
+        for (CommentDTO comment : comments) {
+            ids.add(comment.getId());
+            if (comment.getReplies() != null) {
+                for (CommentDTO reply : comment.getReplies()) {
+                    ids.add(reply.getId());
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 设置一级评论及其回复预览的点赞状态
+     */
+    public static void applyLikedFlags(List<CommentDTO> comments, Set<Long> likedIds) {
+        for (CommentDTO comment : comments) {
+            comment.setLikedByCurrentUser(likedIds.contains(comment.getId()));
+            if (comment.getReplies() != null) {
+                for (CommentDTO reply : comment.getReplies()) {
+                    reply.setLikedByCurrentUser(likedIds.contains(reply.getId()));
+                }
+            }
+        }
+    }
+}
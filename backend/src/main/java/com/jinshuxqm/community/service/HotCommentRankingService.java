@@ -0,0 +1,282 @@
+package com.jinshuxqm.community.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.jinshuxqm.community.repository.CommentRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * 帖子内热门评论排行
+ * 每个帖子在内存中保留热度最高的若干条一级评论及其点赞数、回复数，由点赞、回复、发表和删除评论事件增量更新，
+ * 只在帖子首次访问或条目过期后用一条SQL加载。保留的条数是对外提供条数的两倍，删除评论后仍能补位；
+ * 前topK条总是按内存中的顺序提供，之后的评论按同一算法查询数据库并排除这topK条，
+ * 各页之间不会重复或遗漏
+ *
+ * 热度算法：(likes*1 + replies*2) / (1 + log(1 + 天数))
+ */
+@Service
+public class HotCommentRankingService {
+
+    static final int LIKE_WEIGHT = 1;
+    static final int REPLY_WEIGHT = 2;
+
+    @Autowired
+    private CommentRepository commentRepository;
+
+    // 每个帖子在内存中提供的热门评论条数
+    @Value("${hot-comments.top-k:50}")
+    private int topK;
+
+    @Value("${hot-comments.max-posts:10000}")
+    private long maxPosts;
+
+    @Value("${hot-comments.resync-minutes:30}")
+    private long resyncMinutes;
+
+    // 帖子ID -> 该帖子的热门评论
+    private Cache<Long, PostTopComments> posts;
+
+    // 每次从数据库读取统计前递增，同一评论重复读取时以较晚开始的读取为准
+    private final AtomicLong statsVersion = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        posts = Caffeine.newBuilder()
+                .maximumSize(maxPosts)
+                .expireAfterWrite(resyncMinutes, TimeUnit.MINUTES)
+                .build();
+    }
+
+    /**
+     * 获取帖子按热度排序的一页一级评论ID
+     */
+    public List<Long> getTopCommentIds(Long postId, int page, int size) {
+        long offset = (long) page * size;
+        PostTopComments top = posts.get(postId, this::load);
+        List<Long> ranked = top.ranked(LocalDateTime.now());
+        // 内存中的条目不足topK且帖子还有其他评论时，说明删除过多，重新加载
+        if (ranked.size() < topK && !top.complete) {
+            posts.invalidate(postId);
+            top = posts.get(postId, this::load);
+            ranked = top.ranked(LocalDateTime.now());
+        }
+        if (top.complete) {
+            return slice(ranked, offset, size);
+        }
+
+        List<Long> anchored = ranked.subList(0, Math.min(topK, ranked.size()));
+        List<Long> result = new ArrayList<>(slice(anchored, offset, size));
+        if (result.size() < size) {
+            long sqlOffset = Math.max(0, offset - anchored.size());
+            List<Object[]> rows = anchored.isEmpty()
+                    ? commentRepository.findTopRootStats(postId, LIKE_WEIGHT, REPLY_WEIGHT,
+                            size - result.size(), sqlOffset)
+                    : commentRepository.findTopRootStatsExcluding(postId, anchored, LIKE_WEIGHT, REPLY_WEIGHT,
+                            size - result.size(), sqlOffset);
+            for (Object[] row : rows) {
+                result.add(((Number) row[0]).longValue());
+            }
+        }
+        return result;
+    }
+
+    // 以下事件通过computeIfPresent处理，会等待同一帖子正在进行的加载，不会丢失加载期间的修改
+    public void onRootCreated(Long postId, Long commentId, LocalDateTime createdAt) {
+        posts.asMap().computeIfPresent(postId, (id, top) -> {
+            // 版本为0，不会覆盖回复事件已从数据库读到的统计
+            top.offer(new CommentHeat(commentId, createdAt, 0, 0, 0));
+            return top;
+        });
+    }
+
+    public void onRootDeleted(Long postId, Long commentId) {
+        posts.asMap().computeIfPresent(postId, (id, top) -> {
+            top.remove(commentId);
+            return top;
+        });
+    }
+
+    // root为false表示被点赞的是回复，回复不参与排行，直接忽略
+    public void onLikeChanged(Long postId, Long commentId, boolean root, int delta) {
+        if (root) {
+            update(postId, commentId, heat -> heat.likes = Math.max(0, heat.likes + delta));
+        }
+    }
+
+    // parentIsRoot为false表示回复的是另一条回复，不影响一级评论的回复数
+    public void onReplyChanged(Long postId, Long parentId, boolean parentIsRoot, int delta) {
+        if (parentIsRoot) {
+            update(postId, parentId, heat -> heat.replies = Math.max(0, heat.replies + delta));
+        }
+    }
+
+    public void onPostDeleted(Long postId) {
+        posts.invalidate(postId);
+    }
+
+    // 需在评论的修改提交后调用：未在内存中的评论从数据库读取的统计已包含本次修改
+    private void update(Long postId, Long commentId, Consumer<CommentHeat> mutation) {
+        boolean[] missing = new boolean[1];
+        posts.asMap().computeIfPresent(postId, (id, top) -> {
+            // 已包含帖子全部一级评论时，不在内存中说明评论已删除，无需处理
+            missing[0] = !top.apply(commentId, mutation) && !top.complete;
+            return top;
+        });
+        if (!missing[0]) {
+            return;
+        }
+        // 数据库查询放在computeIfPresent之外，避免查询期间阻塞同一帖子的其他更新；
+        // 并发读取同一评论时，offer保留较晚开始的读取结果
+        long version = statsVersion.incrementAndGet();
+        List<Object[]> rows = commentRepository.findRootStats(commentId);
+        if (rows.isEmpty()) {
+            return;
+        }
+        CommentHeat heat = toHeat(rows.get(0), version);
+        posts.asMap().computeIfPresent(postId, (id, top) -> {
+            top.offer(heat);
+            return top;
+        });
+    }
+
+    private static List<Long> slice(List<Long> ids, long offset, int size) {
+        if (offset >= ids.size()) {
+            return Collections.emptyList();
+        }
+        return ids.subList((int) offset, (int) Math.min(offset + size, ids.size()));
+    }
+
+    private PostTopComments load(Long postId) {
+        int capacity = topK * 2;
+        long version = statsVersion.incrementAndGet();
+        List<Object[]> rows = commentRepository.findTopRootStats(postId, LIKE_WEIGHT, REPLY_WEIGHT, capacity, 0);
+        PostTopComments top = new PostTopComments(capacity, rows.size() < capacity);
+        for (Object[] row : rows) {
+            top.offer(toHeat(row, version));
+        }
+        return top;
+    }
+
+    private static CommentHeat toHeat(Object[] row, long version) {
+        LocalDateTime createdAt = row[2] instanceof Timestamp
+                ? ((Timestamp) row[2]).toLocalDateTime()
+                : (LocalDateTime) row[2];
+        return new CommentHeat(((Number) row[0]).longValue(), createdAt, toInt(row[1]), toInt(row[3]), version);
+    }
+
+    private static int toInt(Object value) {
+        return value != null ? ((Number) value).intValue() : 0;
+    }
+
+    // 评论热度统计
+    private static class CommentHeat {
+        private final Long commentId;
+        private final LocalDateTime createdAt;
+        private int likes;
+        private int replies;
+        // 统计读取自数据库的版本
+        private long version;
+
+        CommentHeat(Long commentId, LocalDateTime createdAt, int likes, int replies, long version) {
+            this.commentId = commentId;
+            this.createdAt = createdAt;
+            this.likes = likes;
+            this.replies = replies;
+            this.version = version;
+        }
+
+        double score(LocalDateTime scoringTime) {
+            double baseScore = likes * LIKE_WEIGHT + replies * REPLY_WEIGHT;
+            double hoursElapsed = createdAt != null
+                    ? Math.max(0, Duration.between(createdAt, scoringTime).toHours())
+                    : 0;
+            return baseScore / (1 + Math.log1p(hoursElapsed / 24));
+        }
+    }
+
+    /**
+     * 一个帖子的热门评论，最多保留capacity条，超出时淘汰热度最低的一条。
+     * complete表示已包含该帖子的全部一级评论
+     */
+    private static class PostTopComments {
+        private final int capacity;
+        private final Map<Long, CommentHeat> heats = new HashMap<>();
+        private volatile boolean complete;
+
+        PostTopComments(int capacity, boolean complete) {
+            this.capacity = capacity;
+            this.complete = complete;
+        }
+
+        // 分数随时间衰减，读取时按当前时间重新排序，条目数有上限，开销固定
+        synchronized List<Long> ranked(LocalDateTime scoringTime) {
+            Comparator<CommentHeat> order = Comparator
+                    .comparingDouble((CommentHeat heat) -> heat.score(scoringTime)).reversed()
+                    .thenComparing(heat -> heat.commentId, Comparator.reverseOrder());
+            return heats.values().stream()
+                    .sorted(order)
+                    .map(heat -> heat.commentId)
+                    .collect(Collectors.toList());
+        }
+
+        synchronized boolean apply(Long commentId, Consumer<CommentHeat> mutation) {
+            CommentHeat heat = heats.get(commentId);
+            if (heat == null) {
+                return false;
+            }
+            mutation.accept(heat);
+            return true;
+        }
+
+        synchronized void offer(CommentHeat candidate) {
+            CommentHeat existing = heats.get(candidate.commentId);
+            if (existing != null) {
+                // 已在内存中时采用较新读取的统计
+                if (candidate.version > existing.version) {
+                    existing.likes = candidate.likes;
+                    existing.replies = candidate.replies;
+                    existing.version = candidate.version;
+                }
+                return;
+            }
+            if (heats.size() < capacity) {
+                heats.put(candidate.commentId, candidate);
+                return;
+            }
+            // 已满时与热度最低的一条比较，较低者被淘汰，内存中不再包含全部评论
+            LocalDateTime now = LocalDateTime.now();
+            CommentHeat lowest = null;
+            for (CommentHeat heat : heats.values()) {
+                if (lowest == null || heat.score(now) < lowest.score(now)) {
+                    lowest = heat;
+                }
+            }
+            complete = false;
+            if (lowest != null && candidate.score(now) > lowest.score(now)) {
+                heats.remove(lowest.commentId);
+                heats.put(candidate.commentId, candidate);
+            }
+        }
+
+        synchronized void remove(Long commentId) {
+            heats.remove(commentId);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.jinshuxqm.community.service;
+
+import com.jinshuxqm.community.model.Post;
+import com.jinshuxqm.community.repository.PostRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
+
+/**
+ * 热门帖子排行索引
+ * 在内存中维护按热度排序的帖子ID，点赞、收藏、评论、浏览事件增量更新分数，
+ * 定时任务统一重新计算时间衰减，并定期从数据库全量校准以修复漂移。
+ * 索引中的计数同时作为帖子详情的实时计数来源
+ *
+ * 热度算法：(views*1 + likes*3 + favorites*5 + comments*8) / (1 + log(1 + 天数))
+ */
+@Service
+public class HotPostRankingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(HotPostRankingService.class);
+
+    private static final int VIEW_WEIGHT = 1;
+    private static final int LIKE_WEIGHT = 3;
+    private static final int FAVORITE_WEIGHT = 5;
+    private static final int COMMENT_WEIGHT = 8;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private ViewCountBuffer viewCountBuffer;
+
+    // 帖子ID -> 热度统计
+    private final ConcurrentHashMap<Long, PostHeat> heats = new ConcurrentHashMap<>();
+
+    // 按分数从高到低排序的索引
+    private final ConcurrentSkipListSet<RankKey> ranking = new ConcurrentSkipListSet<>();
+
+    // 统一的计分时间，保证同一轮衰减内所有帖子使用相同的基准
+    private volatile LocalDateTime scoringTime = LocalDateTime.now();
+
+    private volatile boolean loaded = false;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    /**
+     * 从数据库全量重建索引
+     */
+    @Scheduled(fixedDelayString = "${hot-posts.resync-interval-ms:3600000}",
+               initialDelayString = "${hot-posts.resync-interval-ms:3600000}")
+    public synchronized void rebuild() {
+        try {
+            long start = System.currentTimeMillis();
+            scoringTime = LocalDateTime.now();
+
+            List<Object[]> rows = postRepository.findAllHeatStats();
+            Set<Long> seen = new HashSet<>(rows.size() * 2);
+
+            for (Object[] row : rows) {
+                Long postId = (Long) row[0];
+                PostHeat heat = heats.computeIfAbsent(postId, id -> new PostHeat(id, (LocalDateTime) row[1]));
+                synchronized (heat) {
+                    // 加上尚未写回数据库的浏览增量
+                    heat.views = toInt(row[2]) + (int) viewCountBuffer.getPending(postId);
+                    heat.likes = toInt(row[3]);
+                    heat.favorites = toInt(row[4]);
+                    heat.comments = toInt(row[5]);
+                    reindex(heat);
+                }
+                seen.add(postId);
+            }
+
+            // 移除数据库中已不存在的帖子
+            for (Long postId : new ArrayList<>(heats.keySet())) {
+                if (!seen.contains(postId)) {
+                    onPostDeleted(postId);
+                }
+            }
+
+            loaded = true;
+            logger.info("热榜索引重建完成，共 {} 个帖子，耗时 {} ms", heats.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            logger.error("热榜索引重建失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 定时重新应用时间衰减
+     */
+    @Scheduled(fixedDelayString = "${hot-posts.decay-interval-ms:300000}",
+               initialDelayString = "${hot-posts.decay-interval-ms:300000}")
+    public void refreshDecay() {
+        if (!loaded) {
+            return;
+        }
+        scoringTime = LocalDateTime.now();
+        for (PostHeat heat : heats.values()) {
+            synchronized (heat) {
+                reindex(heat);
+            }
+        }
+        logger.debug("热榜时间衰减已刷新，共 {} 个帖子", heats.size());
+    }
+
+    /**
+     * 获取按热度排序的一页帖子ID
+     */
+    public List<Long> getRankedPostIds(long offset, int size) {
+        ensureLoaded();
+
+        // 迭代期间分数可能被并发更新，同一帖子可能出现两次，这里去重
+        Set<Long> ids = new LinkedHashSet<>();
+        long skipped = 0;
+        for (RankKey key : ranking) {
+            if (ids.size() >= size) {
+                break;
+            }
+            if (skipped < offset) {
+                skipped++;
+                continue;
+            }
+            ids.add(key.postId);
+        }
+        return new ArrayList<>(ids);
+    }
+
+    /**
+     * 索引中的帖子总数
+     */
+    public int size() {
+        ensureLoaded();
+        return heats.size();
+    }
+
+    /**
+     * 获取帖子的实时计数快照，索引中不存在时返回null
+     */
+    public PostCounters getCounters(Long postId) {
+        ensureLoaded();
+        PostHeat heat = heats.get(postId);
+        if (heat == null) {
+            return null;
+        }
+        synchronized (heat) {
+            return new PostCounters(heat.views, heat.likes, heat.favorites, heat.comments);
+        }
+    }
+
+    public void onPostCreated(Post post) {
+        PostHeat heat = heats.computeIfAbsent(post.getId(), id -> new PostHeat(id, post.getCreatedAt()));
+        synchronized (heat) {
+            reindex(heat);
+        }
+    }
+
+    public void onPostDeleted(Long postId) {
+        PostHeat heat = heats.remove(postId);
+        if (heat != null) {
+            synchronized (heat) {
+                if (heat.key != null) {
+                    ranking.remove(heat.key);
+                    heat.key = null;
+                }
+            }
+        }
+    }
+
+    public void onViewed(Long postId, int delta) {
+        update(postId, heat -> heat.views = Math.max(0, heat.views + delta));
+    }
+
+    public void onLikeChanged(Long postId, int delta) {
+        update(postId, heat -> heat.likes = Math.max(0, heat.likes + delta));
+    }
+
+    public void onFavoriteChanged(Long postId, int delta) {
+        update(postId, heat -> heat.favorites = Math.max(0, heat.favorites + delta));
+    }
+
+    public void onCommentChanged(Long postId, int delta) {
+        update(postId, heat -> heat.comments = Math.max(0, heat.comments + delta));
+    }
+
+    private void update(Long postId, Consumer<PostHeat> mutation) {
+        PostHeat heat = heats.get(postId);
+        if (heat == null) {
+            // 索引尚未包含该帖子（例如刚启动），等待下一次全量校准
+            return;
+        }
+        synchronized (heat) {
+            // 帖子可能在加锁前被删除
+            if (heats.get(postId) != heat) {
+                return;
+            }
+            mutation.accept(heat);
+            reindex(heat);
+        }
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    rebuild();
+                }
+            }
+        }
+    }
+
+    // 调用方需持有heat的锁
+    private void reindex(PostHeat heat) {
+        if (heat.key != null) {
+            ranking.remove(heat.key);
+        }
+        heat.key = new RankKey(calculateScore(heat), heat.postId);
+        ranking.add(heat.key);
+    }
+
+    private double calculateScore(PostHeat heat) {
+        double baseScore = heat.views * VIEW_WEIGHT
+                + heat.likes * LIKE_WEIGHT
+                + heat.favorites * FAVORITE_WEIGHT
+                + heat.comments * COMMENT_WEIGHT;
+
+        // 使用帖子创建时间与计分时间之间的小时差作为衰减基础
+        double hoursElapsed = heat.createdAt != null
+                ? Math.max(0, Duration.between(heat.createdAt, scoringTime).toHours())
+                : 0;
+
+        // 使用对数衰减公式，按天数计算
+        double decayFactor = 1 + Math.log1p(hoursElapsed / 24);
+        return baseScore / decayFactor;
+    }
+
+    private static int toInt(Object value) {
+        return value != null ? ((Number) value).intValue() : 0;
+    }
+
+    // 帖子计数快照
+    public static class PostCounters {
+        private final int views;
+        private final int likes;
+        private final int favorites;
+        private final int comments;
+
+        public PostCounters(int views, int likes, int favorites, int comments) {
+            this.views = views;
+            this.likes = likes;
+            this.favorites = favorites;
+            this.comments = comments;
+        }
+
+        public int getViews() {
+            return views;
+        }
+
+        public int getLikes() {
+            return likes;
+        }
+
+        public int getFavorites() {
+            return favorites;
+        }
+
+        public int getComments() {
+            return comments;
+        }
+    }
+
+    // 帖子热度统计
+    private static class PostHeat {
+        private final Long postId;
+        private final LocalDateTime createdAt;
+        private int views;
+        private int likes;
+        private int favorites;
+        private int comments;
+        private RankKey key;
+
+        PostHeat(Long postId, LocalDateTime createdAt) {
+            this.postId = postId;
+            this.createdAt = createdAt;
+        }
+    }
+
+    // 排序键：分数从高到低，分数相同时新帖子在前
+    private static class RankKey implements Comparable<RankKey> {
+        private final double score;
+        private final Long postId;
+
+        RankKey(double score, Long postId) {
+            this.score = score;
+            this.postId = postId;
+        }
+
+        @Override
+        public int compareTo(RankKey other) {
+            int result = Double.compare(other.score, this.score);
+            if (result != 0) {
+                return result;
+            }
+            return Long.compare(other.postId, this.postId);
+        }
+    }
+}
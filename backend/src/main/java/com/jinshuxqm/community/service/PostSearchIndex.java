@@ -0,0 +1,397 @@
+package com.jinshuxqm.community.service;
+
+import com.jinshuxqm.community.model.Post;
+import com.jinshuxqm.community.repository.PostRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 帖子全文检索倒排索引
+ * 对标题、正文和标签分词后建立倒排表，按BM25打分排序，替代LIKE '%q%'全表扫描。
+ * 分词规则：拉丁字母和数字按连续片段切分并转小写，中日韩文字按相邻两字切分（单字片段保留单字）；
+ * 建索引时中日韩文字另外按单字索引，单字查询也能命中多字词中的字。
+ * 查询的最后一个拉丁字母/数字词按前缀匹配（例如"spr"命中"spring"），词中间的子串不再匹配。
+ * 启动后分批从数据库加载，之后由帖子的创建、修改、删除增量维护；加载期间删除的帖子记录下来，加载完成后再移除
+ */
+@Service
+public class PostSearchIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(PostSearchIndex.class);
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    // 字段权重：命中标题的词频按3倍计，标签2倍，正文1倍
+    private static final int TITLE_BOOST = 3;
+    private static final int TAG_BOOST = 2;
+    private static final int CONTENT_BOOST = 1;
+
+    private static final int LOAD_BATCH_SIZE = 500;
+
+    // 前缀匹配的最短长度和最多展开的词数
+    private static final int MIN_PREFIX_LENGTH = 2;
+    private static final int MAX_PREFIX_EXPANSIONS = 50;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    // 词 -> (帖子ID -> 加权词频)，按词排序以便前缀查找
+    private final NavigableMap<String, Map<Long, Integer>> postings = new TreeMap<>();
+
+    // 帖子ID -> 已索引的文档信息，用于更新和删除时撤销旧的倒排项
+    private final Map<Long, IndexedDoc> docs = new HashMap<>();
+
+    private long totalLength = 0;
+
+    // 初始加载期间删除的帖子，不为null表示正在加载；由写锁保护
+    private Set<Long> removedDuringLoad;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private volatile boolean ready = false;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        lock.writeLock().lock();
+        try {
+            removedDuringLoad = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            long start = System.currentTimeMillis();
+            Long lastId = 0L;
+            while (true) {
+                List<Long> ids = postRepository.findIdsAfter(lastId, PageRequest.of(0, LOAD_BATCH_SIZE));
+                if (ids.isEmpty()) {
+                    break;
+                }
+                for (Post post : postRepository.findAllWithDetailsByIdIn(ids)) {
+                    index(post);
+                }
+                lastId = ids.get(ids.size() - 1);
+            }
+            // 批次读出之后才删除的帖子已被重新加入，这里统一移除
+            lock.writeLock().lock();
+            try {
+                for (Long postId : removedDuringLoad) {
+                    IndexedDoc existing = docs.get(postId);
+                    if (existing != null) {
+                        removeLocked(postId, existing);
+                    }
+                }
+                removedDuringLoad = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            ready = true;
+            logger.info("帖子检索索引构建完成，共 {} 个帖子、{} 个词，耗时 {} ms",
+                    docs.size(), postings.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            logger.error("帖子检索索引构建失败，搜索将回退到数据库查询: {}", e.getMessage(), e);
+            lock.writeLock().lock();
+            try {
+                removedDuringLoad = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * 索引是否已构建完成，未完成时调用方应回退到数据库查询
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 添加或更新帖子的索引；已索引的版本更新时，较旧的数据会被忽略
+     */
+    public void index(Post post) {
+        Map<String, Integer> termFreqs = new HashMap<>();
+        addTerms(termFreqs, post.getTitle(), TITLE_BOOST);
+        addTerms(termFreqs, post.getContent(), CONTENT_BOOST);
+        if (post.getTags() != null) {
+            for (String tag : post.getTags()) {
+                addTerms(termFreqs, tag, TAG_BOOST);
+            }
+        }
+        int length = termFreqs.values().stream().mapToInt(Integer::intValue).sum();
+
+        lock.writeLock().lock();
+        try {
+            IndexedDoc existing = docs.get(post.getId());
+            if (existing != null) {
+                if (existing.updatedAt != null && post.getUpdatedAt() != null
+                        && existing.updatedAt.isAfter(post.getUpdatedAt())) {
+                    return;
+                }
+                removeLocked(post.getId(), existing);
+            }
+            for (Map.Entry<String, Integer> entry : termFreqs.entrySet()) {
+                postings.computeIfAbsent(entry.getKey(), t -> new HashMap<>()).put(post.getId(), entry.getValue());
+            }
+            docs.put(post.getId(), new IndexedDoc(termFreqs.keySet(), length, post.getUpdatedAt()));
+            totalLength += length;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long postId) {
+        lock.writeLock().lock();
+        try {
+            if (removedDuringLoad != null) {
+                removedDuringLoad.add(postId);
+            }
+            IndexedDoc existing = docs.get(postId);
+            if (existing != null) {
+                removeLocked(postId, existing);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 检索帖子，返回按相关度排序的一页帖子ID和匹配总数。
+     * 帖子需要包含查询中的所有词才算匹配
+     */
+    public SearchHits search(String query, long offset, int size) {
+        List<String> tokens = tokenize(query);
+        Set<String> terms = new LinkedHashSet<>(tokens);
+        if (terms.isEmpty()) {
+            return new SearchHits(Collections.emptyList(), 0);
+        }
+        // 最后一个词可能还没输完，按前缀匹配
+        String last = tokens.get(tokens.size() - 1);
+        String prefixTerm = last.length() >= MIN_PREFIX_LENGTH && !isCjk(last.codePointAt(0)) ? last : null;
+
+        List<ScoredDoc> scored = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            List<Map<Long, Integer>> termPostings = new ArrayList<>(terms.size());
+            for (String term : terms) {
+                Map<Long, Integer> list = term.equals(prefixTerm) ? prefixPostings(term) : postings.get(term);
+                if (list == null) {
+                    return new SearchHits(Collections.emptyList(), 0);
+                }
+                termPostings.add(list);
+            }
+            // 从最短的倒排表开始求交集
+            termPostings.sort((a, b) -> Integer.compare(a.size(), b.size()));
+
+            int docCount = docs.size();
+            double avgLength = docCount > 0 ? (double) totalLength / docCount : 1;
+            double[] idf = new double[termPostings.size()];
+            for (int i = 0; i < idf.length; i++) {
+                int df = termPostings.get(i).size();
+                idf[i] = Math.log(1 + (docCount - df + 0.5) / (df + 0.5));
+            }
+
+            candidates:
+            for (Long postId : termPostings.get(0).keySet()) {
+                double lengthNorm = K1 * (1 - B + B * docs.get(postId).length / avgLength);
+                double score = 0;
+                for (int i = 0; i < termPostings.size(); i++) {
+                    Integer tf = termPostings.get(i).get(postId);
+                    if (tf == null) {
+                        continue candidates;
+                    }
+                    score += idf[i] * tf * (K1 + 1) / (tf + lengthNorm);
+                }
+                scored.add(new ScoredDoc(postId, score));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // 相关度相同时新帖子在前
+        scored.sort((a, b) -> {
+            int result = Double.compare(b.score, a.score);
+            return result != 0 ? result : Long.compare(b.postId, a.postId);
+        });
+
+        List<Long> page = new ArrayList<>(size);
+        for (long i = offset; i < scored.size() && page.size() < size; i++) {
+            page.add(scored.get((int) i).postId);
+        }
+        return new SearchHits(page, scored.size());
+    }
+
+    // 以prefix开头的词的倒排表合并，同一帖子取最大词频；没有匹配的词时返回null。调用方需持有读锁
+    private Map<Long, Integer> prefixPostings(String prefix) {
+        Map<Long, Integer> merged = null;
+        int expanded = 0;
+        for (Map.Entry<String, Map<Long, Integer>> entry : postings.tailMap(prefix, true).entrySet()) {
+            if (!entry.getKey().startsWith(prefix) || expanded++ >= MAX_PREFIX_EXPANSIONS) {
+                break;
+            }
+            if (merged == null) {
+                merged = new HashMap<>(entry.getValue());
+            } else {
+                for (Map.Entry<Long, Integer> posting : entry.getValue().entrySet()) {
+                    merged.merge(posting.getKey(), posting.getValue(), Math::max);
+                }
+            }
+        }
+        return merged;
+    }
+
+    // 调用方需持有写锁
+    private void removeLocked(Long postId, IndexedDoc doc) {
+        for (String term : doc.terms) {
+            Map<Long, Integer> list = postings.get(term);
+            if (list != null) {
+                list.remove(postId);
+                if (list.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+        docs.remove(postId);
+        totalLength -= doc.length;
+    }
+
+    private static void addTerms(Map<String, Integer> termFreqs, String text, int boost) {
+        for (String term : tokenizeForIndex(text)) {
+            termFreqs.merge(term, boost, Integer::sum);
+        }
+    }
+
+    /**
+     * 查询分词：拉丁字母和数字的连续片段作为一个词，中日韩文字按相邻两字切分
+     */
+    static List<String> tokenize(String text) {
+        return tokenize(text, false);
+    }
+
+    /**
+     * 索引分词：在查询分词的基础上，中日韩文字再逐字输出单字词
+     */
+    static List<String> tokenizeForIndex(String text) {
+        return tokenize(text, true);
+    }
+
+    private static List<String> tokenize(String text, boolean cjkUnigrams) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            int codePoint = text.codePointAt(i);
+            if (isCjk(codePoint)) {
+                int start = i;
+                while (i < length && isCjk(text.codePointAt(i))) {
+                    i += Character.charCount(text.codePointAt(i));
+                }
+                addCjkTerms(tokens, text.substring(start, i), cjkUnigrams);
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                int start = i;
+                while (i < length) {
+                    int c = text.codePointAt(i);
+                    if (!Character.isLetterOrDigit(c) || isCjk(c)) {
+                        break;
+                    }
+                    i += Character.charCount(c);
+                }
+                tokens.add(text.substring(start, i).toLowerCase());
+            } else {
+                i += Character.charCount(codePoint);
+            }
+        }
+        return tokens;
+    }
+
+    private static void addCjkTerms(List<String> tokens, String run, boolean unigrams) {
+        int[] codePoints = run.codePoints().toArray();
+        if (codePoints.length == 1) {
+            tokens.add(run);
+            return;
+        }
+        for (int i = 0; i + 1 < codePoints.length; i++) {
+            tokens.add(new String(codePoints, i, 2));
+        }
+        if (unigrams) {
+            for (int i = 0; i < codePoints.length; i++) {
+                tokens.add(new String(codePoints, i, 1));
+            }
+        }
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    /**
+     * 检索结果：当前页的帖子ID（按相关度排序）和匹配总数
+     */
+    public static class SearchHits {
+        private final List<Long> postIds;
+        private final long total;
+
+        public SearchHits(List<Long> postIds, long total) {
+            this.postIds = postIds;
+            this.total = total;
+        }
+
+        public List<Long> getPostIds() {
+            return postIds;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+    }
+
+    // 已索引的帖子
+    private static class IndexedDoc {
+        private final Collection<String> terms;
+        private final int length;
+        private final LocalDateTime updatedAt;
+
+        IndexedDoc(Collection<String> terms, int length, LocalDateTime updatedAt) {
+            this.terms = terms;
+            this.length = length;
+            this.updatedAt = updatedAt;
+        }
+    }
+
+    private static class ScoredDoc {
+        private final Long postId;
+        private final double score;
+
+        ScoredDoc(Long postId, double score) {
+            this.postId = postId;
+            this.score = score;
+        }
+    }
+}
@@ -3,13 +3,16 @@ package com.jinshuxqm.community.service;
 import com.jinshuxqm.community.model.Post;
 import com.jinshuxqm.community.model.dto.PostRequest;
 import com.jinshuxqm.community.model.dto.PostResponse;
+import com.jinshuxqm.community.dto.CursorPageDTO;
 import com.jinshuxqm.community.dto.PagedResponseDTO;
 import com.jinshuxqm.community.dto.PostDTO;
+import com.jinshuxqm.community.dto.PostReactionFlags;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.security.core.Authentication;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.stream.Collectors;
@@ -18,14 +21,25 @@ public interface PostService {
     // 创建帖子
     PostResponse createPost(PostRequest postRequest, String username);
     
-    // 获取所有帖子
-    Page<PostResponse> getAllPosts(Pageable pageable);
+    // 获取所有帖子，username为当前用户（未登录为null），用于填充点赞和收藏状态
+    Page<PostResponse> getAllPosts(Pageable pageable, String username);
     
     // 根据ID获取帖子
     PostResponse getPostById(Long id);
     
     // 根据标签获取帖子
-    Page<PostResponse> getPostsByTab(String tab, Pageable pageable);
+    Page<PostResponse> getPostsByTab(String tab, Pageable pageable, String username);
+    
+    /**
+     * 按游标获取帖子，按创建时间倒序
+     * 
+     * @param tab 标签，为null时不限标签
+     * @param cursor 上一页返回的游标，为空时获取第一页
+     * @param size 每页数量
+     * @param withTotal 是否统计总数
+     * @param username 当前用户，未登录为null
+     */
+    CursorPageDTO<PostResponse> getPostsByCursor(String tab, String cursor, int size, boolean withTotal, String username);
     
     // 更新帖子
     PostResponse updatePost(Long id, PostRequest postRequest, String username);
@@ -54,6 +68,15 @@ public interface PostService {
     // 检查用户是否已收藏帖子
     boolean hasUserFavoritedPost(Long postId, String username);
     
+    /**
+     * 批量获取用户对一组帖子的点赞和收藏状态
+     * 
+     * @param postIds 帖子ID列表
+     * @param userId 用户ID，为null时全部返回未点赞、未收藏
+     * @return 已点赞和已收藏的帖子ID集合
+     */
+    PostReactionFlags getReactionFlags(Collection<Long> postIds, Long userId);
+    
     // 获取用户点赞的所有帖子
     List<PostResponse> getLikedPostsByUser(String username);
     
@@ -63,32 +86,37 @@ public interface PostService {
     // 检查帖子是否存在
     boolean existsById(Long id);
     
-    // 添加这个方法
-    PagedResponseDTO<PostDTO> getPostsByUserId(Long userId, int page, int size);
+    // 获取用户发布的帖子，viewerUsername为当前浏览者
+    PagedResponseDTO<PostDTO> getPostsByUserId(Long userId, int page, int size, String viewerUsername);
+    
+    // 按游标获取用户发布的帖子
+    CursorPageDTO<PostDTO> getPostsByUserIdCursor(Long userId, String cursor, int size, boolean withTotal, String viewerUsername);
     
-    // 添加这个方法
-    PagedResponseDTO<PostDTO> getLikedPostsByUserId(Long userId, int page, int size);
+    // 获取用户点赞的帖子
+    PagedResponseDTO<PostDTO> getLikedPostsByUserId(Long userId, int page, int size, String viewerUsername);
     
-    // 添加这个方法
-    PagedResponseDTO<PostDTO> getFavoritedPostsByUserId(Long userId, int page, int size);
+    // 获取用户收藏的帖子
+    PagedResponseDTO<PostDTO> getFavoritedPostsByUserId(Long userId, int page, int size, String viewerUsername);
 
     /**
      * 搜索帖子
      * 
      * @param query 搜索关键词
      * @param pageable 分页信息
+     * @param username 当前用户名，未登录为null
      * @return 匹配的帖子分页
      */
-    Page<PostResponse> searchPosts(String query, Pageable pageable);
+    Page<PostResponse> searchPosts(String query, Pageable pageable, String username);
     
     /**
      * 获取热门帖子
      * 使用热度算法：views*1 + likes*3 + favorites*5 + comments*8，并考虑时间衰减因子
      * 
      * @param pageable 分页信息
+     * @param username 当前用户名，未登录为null
      * @return 按热度排序的帖子分页
      */
-    Page<PostResponse> getHotPosts(Pageable pageable);
+    Page<PostResponse> getHotPosts(Pageable pageable, String username);
     
     /**
      * 调试方法：获取所有帖子
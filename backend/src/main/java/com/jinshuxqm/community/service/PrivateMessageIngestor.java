@@ -0,0 +1,518 @@
+package com.jinshuxqm.community.service;
+
+import com.jinshuxqm.community.dto.PrivateMessageDTO;
+import com.jinshuxqm.community.exception.ResourceNotFoundException;
+import com.jinshuxqm.community.exception.ServiceUnavailableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 私信写入管道（组提交）
+ * 发送接口把消息放入有界队列后等待写入结果，后台线程收到消息后再等待linger-ms收集同一批消息，在一个事务中：
+ * 一次查询所有发送者和接收者，补建缺少的会话，用一条多行INSERT写入消息，每对用户更新一次会话和双方的收件箱。
+ * 事务提交后再返回各条消息并推送SSE通知。
+ * 所有消息只由后台线程按入队顺序写入，消息ID和会话历史的顺序与发送顺序一致；队列持续已满时返回503
+ */
+@Service
+public class PrivateMessageIngestor {
+
+    private static final Logger logger = LoggerFactory.getLogger(PrivateMessageIngestor.class);
+
+    private static final String INSERT_CONVERSATION_SQL =
+            "INSERT IGNORE INTO message_conversations (user1_id, user2_id, unread_count, user1_unread_count, user2_unread_count) " +
+            "VALUES (?, ?, 0, 0, 0)";
+    private static final String INSERT_MESSAGES_SQL =
+            "INSERT INTO private_messages (sender_id, receiver_id, conversation_id, content, is_read, created_at) VALUES ";
+    private static final String MESSAGE_VALUES = "(?, ?, ?, ?, false, ?)";
+    private static final String UPDATE_CONVERSATION_SQL =
+            "UPDATE message_conversations SET last_message_id = ?, last_message_time = ?, " +
+            "user1_unread_count = user1_unread_count + ?, user2_unread_count = user2_unread_count + ?, " +
+            "unread_count = user1_unread_count + user2_unread_count WHERE id = ?";
+    private static final String UPSERT_INBOX_SQL =
+            "INSERT INTO conversation_inbox (user_id, partner_id, conversation_id, partner_username, " +
+            "partner_avatar, last_message_content, last_message_time, unread_count) VALUES (?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE partner_username = VALUES(partner_username), " +
+            "partner_avatar = VALUES(partner_avatar), last_message_content = VALUES(last_message_content), " +
+            "last_message_time = VALUES(last_message_time), unread_count = unread_count + VALUES(unread_count)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private UnreadCounterStore unreadCounterStore;
+
+    @Autowired
+    private SseService sseService;
+
+    @Value("${message-ingest.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${message-ingest.batch-size:200}")
+    private int batchSize;
+
+    @Value("${message-ingest.linger-ms:5}")
+    private long lingerMs;
+
+    @Value("${message-ingest.send-timeout-ms:10000}")
+    private long sendTimeoutMs;
+
+    @Value("${message-ingest.shutdown-timeout-ms:5000}")
+    private long shutdownTimeoutMs;
+
+    // 队列已满时发送请求等待空位的最长时间，超时返回503
+    @Value("${message-ingest.enqueue-timeout-ms:2000}")
+    private long enqueueTimeoutMs;
+
+    private BlockingQueue<PendingMessage> queue;
+    private TransactionTemplate transactionTemplate;
+    private Thread consumer;
+    private volatile boolean running;
+
+    private final AtomicLong persistedMessages = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong rejectedMessages = new AtomicLong();
+    private final AtomicLong failedMessages = new AtomicLong();
+    private volatile int lastBatchSize;
+    private volatile LocalDateTime lastBatchTime;
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        running = true;
+        consumer = new Thread(this::consumeLoop, "message-ingest");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * 发送一条私信，等待所在批次提交后返回。
+     * 等待超时只表示结果未知，消息仍可能在之后写入
+     *
+     * @throws ResourceNotFoundException 发送者或接收者不存在
+     * @throws ServiceUnavailableException 队列持续已满或正在关闭
+     */
+    public PrivateMessageDTO send(Long senderId, Long receiverId, String content) {
+        PendingMessage pending = new PendingMessage(senderId, receiverId, content, LocalDateTime.now());
+        if (!running || !enqueue(pending)) {
+            rejectedMessages.incrementAndGet();
+            throw new ServiceUnavailableException("消息发送繁忙，请稍后重试");
+        }
+
+        try {
+            return pending.result.get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("私信发送失败", e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("私信发送超时");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("私信发送被中断");
+        }
+    }
+
+    /**
+     * 管道状态，用于诊断接口
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("queued", queue.size());
+        stats.put("capacity", queueCapacity);
+        stats.put("persistedMessages", persistedMessages.get());
+        stats.put("batches", batches.get());
+        stats.put("rejectedMessages", rejectedMessages.get());
+        stats.put("failedMessages", failedMessages.get());
+        stats.put("lastBatchSize", lastBatchSize);
+        stats.put("lastBatchTime", lastBatchTime);
+        return stats;
+    }
+
+    private void consumeLoop() {
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingMessage first = queue.poll(500, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // 最多等待linger-ms，把这段时间内到达的消息合并到同一批
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingMessage next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, batchSize - batch.size());
+                }
+                persistSafely(batch);
+            } catch (InterruptedException e) {
+                // 线程被中断视为关闭：已取出的消息先写入，再继续循环写完队列中剩余的消息
+                running = false;
+                if (!batch.isEmpty()) {
+                    persistSafely(batch);
+                }
+            } catch (Exception e) {
+                logger.error("私信批量写入异常: {}", e.getMessage(), e);
+                // 已取出但未得到结果的消息直接失败，不让调用方等到超时
+                for (PendingMessage message : batch) {
+                    message.result.completeExceptionally(e);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private boolean enqueue(PendingMessage pending) {
+        try {
+            return queue.offer(pending, enqueueTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 应用关闭前在限定时间内写完队列中的消息
+     */
+    @PreDestroy
+    public void stop() {
+        // 消费线程的poll带超时，置位后会自行写完剩余消息并退出
+        running = false;
+        try {
+            consumer.join(shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            logger.warn("关闭前写入私信超时（{} ms），未写入的消息数: {}", shutdownTimeoutMs, queue.size());
+            // 不会再写入的消息直接失败，调用方无需等到超时
+            PendingMessage pending;
+            while ((pending = queue.poll()) != null) {
+                pending.result.completeExceptionally(new ServiceUnavailableException("服务正在关闭，消息未发送"));
+            }
+        }
+    }
+
+    private void persistSafely(List<PendingMessage> messages) {
+        try {
+            persist(messages);
+        } catch (Exception e) {
+            if (messages.size() == 1) {
+                failedMessages.incrementAndGet();
+                messages.get(0).result.completeExceptionally(e);
+                return;
+            }
+            // 整批失败时逐条重试，避免一条坏消息拖累整批
+            logger.warn("私信批量写入失败，改为逐条写入: {}", e.getMessage());
+            for (PendingMessage message : messages) {
+                List<PendingMessage> single = new ArrayList<>(1);
+                single.add(message);
+                persistSafely(single);
+            }
+        }
+    }
+
+    private void persist(List<PendingMessage> messages) {
+        Set<Long> userIds = new LinkedHashSet<>();
+        for (PendingMessage message : messages) {
+            userIds.add(message.senderId);
+            userIds.add(message.receiverId);
+        }
+        Map<Long, UserSummary> users = loadUsers(userIds);
+
+        List<PendingMessage> valid = new ArrayList<>(messages.size());
+        for (PendingMessage message : messages) {
+            if (!users.containsKey(message.senderId)) {
+                message.result.completeExceptionally(new ResourceNotFoundException("发送者不存在"));
+            } else if (!users.containsKey(message.receiverId)) {
+                message.result.completeExceptionally(new ResourceNotFoundException("接收者不存在"));
+            } else {
+                valid.add(message);
+            }
+        }
+        if (valid.isEmpty()) {
+            return;
+        }
+
+        long unreadWriteSeq = unreadCounterStore.beginWrite();
+        List<PrivateMessageDTO> saved = transactionTemplate.execute(status -> write(valid, users));
+        batches.incrementAndGet();
+        persistedMessages.addAndGet(valid.size());
+        lastBatchSize = valid.size();
+        lastBatchTime = LocalDateTime.now();
+
+        // 提交成功后再返回结果并推送通知
+        for (int i = 0; i < valid.size(); i++) {
+            valid.get(i).result.complete(saved.get(i));
+        }
+        for (PrivateMessageDTO message : saved) {
+            try {
+                int unreadCount = unreadCounterStore.add(message.getReceiverId(), 1, unreadWriteSeq);
+                sseService.sendPrivateMessageEvent(message.getReceiverId(), message, unreadCount);
+            } catch (Exception e) {
+                logger.warn("私信通知推送失败，消息ID: {}, 错误: {}", message.getId(), e.getMessage());
+            }
+        }
+    }
+
+    // 在同一个事务中写入一批消息，返回顺序与传入顺序一致
+    private List<PrivateMessageDTO> write(List<PendingMessage> messages, Map<Long, UserSummary> users) {
+        Map<PairKey, ConversationRow> conversations = resolveConversations(messages);
+
+        List<Long> ids = insertMessages(messages, conversations);
+
+        // 会话ID -> 本批次内的汇总，按会话ID排序以保证加锁顺序一致
+        Map<Long, PairState> states = new TreeMap<>();
+        List<PrivateMessageDTO> saved = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            PendingMessage message = messages.get(i);
+            UserSummary sender = users.get(message.senderId);
+            UserSummary receiver = users.get(message.receiverId);
+            PrivateMessageDTO dto = new PrivateMessageDTO(ids.get(i), sender.id, sender.username, sender.avatar,
+                    receiver.id, receiver.username, receiver.avatar, message.content, false, message.createdAt);
+            saved.add(dto);
+
+            ConversationRow conversation = conversations.get(PairKey.of(message.senderId, message.receiverId));
+            PairState state = states.computeIfAbsent(conversation.id, id -> new PairState(conversation));
+            state.last = dto;
+            if (conversation.user1Id.equals(message.receiverId)) {
+                state.user1Received++;
+            } else {
+                state.user2Received++;
+            }
+        }
+
+        List<Object[]> conversationArgs = new ArrayList<>(states.size());
+        List<Object[]> inboxArgs = new ArrayList<>(states.size() * 2);
+        for (PairState state : states.values()) {
+            PrivateMessageDTO last = state.last;
+            Timestamp time = Timestamp.valueOf(last.getCreatedAt());
+            conversationArgs.add(new Object[]{last.getId(), time, state.user1Received, state.user2Received,
+                    state.conversation.id});
+
+            UserSummary user1 = users.get(state.conversation.user1Id);
+            UserSummary user2 = users.get(state.conversation.user2Id);
+            inboxArgs.add(new Object[]{user1.id, user2.id, state.conversation.id, user2.username, user2.avatar,
+                    last.getContent(), time, state.user1Received});
+            inboxArgs.add(new Object[]{user2.id, user1.id, state.conversation.id, user1.username, user1.avatar,
+                    last.getContent(), time, state.user2Received});
+        }
+        jdbcTemplate.batchUpdate(UPDATE_CONVERSATION_SQL, conversationArgs);
+        jdbcTemplate.batchUpdate(UPSERT_INBOX_SQL, inboxArgs);
+        return saved;
+    }
+
+    // 一条多行INSERT写入整批消息，返回按插入顺序生成的ID
+    private List<Long> insertMessages(List<PendingMessage> messages, Map<PairKey, ConversationRow> conversations) {
+        String sql = INSERT_MESSAGES_SQL + String.join(", ", Collections.nCopies(messages.size(), MESSAGE_VALUES));
+        List<Long> ids = jdbcTemplate.execute((ConnectionCallback<List<Long>>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                int index = 1;
+                for (PendingMessage message : messages) {
+                    ps.setLong(index++, message.senderId);
+                    ps.setLong(index++, message.receiverId);
+                    ps.setLong(index++, conversations.get(PairKey.of(message.senderId, message.receiverId)).id);
+                    ps.setString(index++, message.content);
+                    ps.setTimestamp(index++, Timestamp.valueOf(message.createdAt));
+                }
+                ps.executeUpdate();
+
+                List<Long> keys = new ArrayList<>(messages.size());
+                try (ResultSet rs = ps.getGeneratedKeys()) {
+                    while (rs.next()) {
+                        keys.add(rs.getLong(1));
+                    }
+                }
+                return keys;
+            }
+        });
+        if (ids == null || ids.size() != messages.size()) {
+            throw new IllegalStateException("私信写入返回的ID数量与消息数量不一致");
+        }
+        return ids;
+    }
+
+    // 查找每对用户的会话，缺少的先补建再查询
+    private Map<PairKey, ConversationRow> resolveConversations(List<PendingMessage> messages) {
+        Set<PairKey> pairs = new LinkedHashSet<>();
+        for (PendingMessage message : messages) {
+            pairs.add(PairKey.of(message.senderId, message.receiverId));
+        }
+
+        Map<PairKey, ConversationRow> conversations = findConversations(pairs);
+        if (conversations.size() < pairs.size()) {
+            List<Object[]> args = new ArrayList<>();
+            for (PairKey pair : pairs) {
+                if (!conversations.containsKey(pair)) {
+                    args.add(new Object[]{pair.lowId, pair.highId});
+                }
+            }
+            jdbcTemplate.batchUpdate(INSERT_CONVERSATION_SQL, args);
+            conversations = findConversations(pairs);
+        }
+        if (conversations.size() < pairs.size()) {
+            throw new IllegalStateException("创建会话失败");
+        }
+        return conversations;
+    }
+
+    // 历史数据中user1和user2的顺序不固定，两种顺序都要查
+    private Map<PairKey, ConversationRow> findConversations(Collection<PairKey> pairs) {
+        StringBuilder sql = new StringBuilder("SELECT id, user1_id, user2_id FROM message_conversations WHERE ");
+        List<Object> args = new ArrayList<>(pairs.size() * 4);
+        for (PairKey pair : pairs) {
+            if (!args.isEmpty()) {
+                sql.append(" OR ");
+            }
+            sql.append("(user1_id = ? AND user2_id = ?) OR (user1_id = ? AND user2_id = ?)");
+            args.add(pair.lowId);
+            args.add(pair.highId);
+            args.add(pair.highId);
+            args.add(pair.lowId);
+        }
+
+        Map<PairKey, ConversationRow> result = new HashMap<>();
+        jdbcTemplate.query(sql.toString(), rs -> {
+            ConversationRow row = new ConversationRow(rs.getLong(1), rs.getLong(2), rs.getLong(3));
+            result.putIfAbsent(PairKey.of(row.user1Id, row.user2Id), row);
+        }, args.toArray());
+        return result;
+    }
+
+    private Map<Long, UserSummary> loadUsers(Collection<Long> userIds) {
+        String sql = "SELECT id, username, avatar FROM users WHERE id IN ("
+                + String.join(", ", Collections.nCopies(userIds.size(), "?")) + ")";
+        Map<Long, UserSummary> users = new LinkedHashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            UserSummary user = new UserSummary(rs.getLong(1), rs.getString(2), rs.getString(3));
+            users.put(user.id, user);
+        }, userIds.toArray());
+        return users;
+    }
+
+    private static class PendingMessage {
+        private final Long senderId;
+        private final Long receiverId;
+        private final String content;
+        private final LocalDateTime createdAt;
+        private final CompletableFuture<PrivateMessageDTO> result = new CompletableFuture<>();
+
+        PendingMessage(Long senderId, Long receiverId, String content, LocalDateTime createdAt) {
+            this.senderId = senderId;
+            this.receiverId = receiverId;
+            this.content = content;
+            this.createdAt = createdAt;
+        }
+    }
+
+    private static class UserSummary {
+        private final Long id;
+        private final String username;
+        private final String avatar;
+
+        UserSummary(Long id, String username, String avatar) {
+            this.id = id;
+            this.username = username;
+            this.avatar = avatar;
+        }
+    }
+
+    private static class ConversationRow {
+        private final Long id;
+        private final Long user1Id;
+        private final Long user2Id;
+
+        ConversationRow(Long id, Long user1Id, Long user2Id) {
+            this.id = id;
+            this.user1Id = user1Id;
+            this.user2Id = user2Id;
+        }
+    }
+
+    // 一个会话在本批次内的汇总：最后一条消息和双方各自新增的未读数
+    private static class PairState {
+        private final ConversationRow conversation;
+        private PrivateMessageDTO last;
+        private int user1Received;
+        private int user2Received;
+
+        PairState(ConversationRow conversation) {
+            this.conversation = conversation;
+        }
+    }
+
+    // 不区分顺序的一对用户
+    private static class PairKey {
+        private final long lowId;
+        private final long highId;
+
+        private PairKey(long lowId, long highId) {
+            this.lowId = lowId;
+            this.highId = highId;
+        }
+
+        static PairKey of(long userId, long otherUserId) {
+            return new PairKey(Math.min(userId, otherUserId), Math.max(userId, otherUserId));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PairKey)) {
+                return false;
+            }
+            PairKey other = (PairKey) o;
+            return lowId == other.lowId && highId == other.highId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(lowId) * 31 + Long.hashCode(highId);
+        }
+    }
+}
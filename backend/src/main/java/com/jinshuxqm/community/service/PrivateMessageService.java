@@ -1,6 +1,7 @@
 package com.jinshuxqm.community.service;
 
 import com.jinshuxqm.community.dto.ConversationDTO;
+import com.jinshuxqm.community.dto.CursorPageDTO;
 import com.jinshuxqm.community.dto.PrivateMessageDTO;
 import com.jinshuxqm.community.model.PrivateMessage;
 import org.springframework.data.domain.Page;
@@ -16,9 +17,18 @@ public interface PrivateMessageService {
     // 获取两个用户之间的消息记录
     Page<PrivateMessageDTO> getMessagesBetweenUsers(Long userId, Long partnerId, Pageable pageable);
     
+    // 按会话获取消息记录，beforeId为空时从最新的消息开始，最新的在前
+    CursorPageDTO<PrivateMessageDTO> getConversationHistory(Long userId, Long conversationId, Long beforeId, int size);
+    
+    // 获取会话中对方的用户ID，当前用户不是会话成员时抛出ResourceNotFoundException
+    Long getConversationPartnerId(Long userId, Long conversationId);
+    
     // 获取用户的所有会话列表
     Page<ConversationDTO> getUserConversations(Long userId, Pageable pageable);
     
+    // 按游标分页获取用户的会话列表，cursor为空时返回第一页
+    CursorPageDTO<ConversationDTO> getUserConversationsByCursor(Long userId, String cursor, int size);
+    
     // 将消息标记为已读
     void markMessagesAsRead(Long userId, Long partnerId);
     
@@ -0,0 +1,520 @@
+package com.jinshuxqm.community.service;
+
+import com.jinshuxqm.community.exception.ServiceUnavailableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 点赞/收藏事件管道
+ * 接口把事件写入发件箱表并放入有界队列后即返回，后台线程批量取出事件后：
+ * 按(用户, 帖子, 类型)合并为最终状态，批量写入/删除关联记录，
+ * 再根据实际影响的行数汇总每个帖子的计数增量，一个批次内统一更新post_stats，并在同一事务中删除发件箱记录。
+ *
+ * 同一(用户, 帖子, 类型)的事件按提交顺序进入发件箱和队列，所有事件只由后台线程按队列顺序写入；
+ * 队列已满时请求等待一段时间，仍无空位则返回503，不会绕过队列直接写入。
+ * 进程异常退出时未写入的事件保留在发件箱中，启动时按ID顺序重放。
+ * 数据库暂时不可用（连接断开、锁等待超时等）时整批保留并退避重试，只有无法写入的事件（例如帖子已删除）才被丢弃
+ */
+@Service
+public class ReactionEventPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactionEventPipeline.class);
+
+    // 依赖JDBC批处理返回每条语句的实际影响行数，数据源URL不能开启rewriteBatchedStatements
+    private static final String INSERT_LIKE_SQL =
+            "INSERT IGNORE INTO post_likes (user_id, post_id, created_at) VALUES (?, ?, ?)";
+    private static final String DELETE_LIKE_SQL =
+            "DELETE FROM post_likes WHERE user_id = ? AND post_id = ?";
+    private static final String INSERT_FAVORITE_SQL =
+            "INSERT IGNORE INTO post_favorites (user_id, post_id, created_at) VALUES (?, ?, ?)";
+    private static final String DELETE_FAVORITE_SQL =
+            "DELETE FROM post_favorites WHERE user_id = ? AND post_id = ?";
+    private static final String INSERT_OUTBOX_SQL =
+            "INSERT INTO reaction_outbox (user_id, post_id, type, active, created_at) VALUES (?, ?, ?, ?, ?)";
+    private static final String SELECT_OUTBOX_SQL =
+            "SELECT id, user_id, post_id, type, active, created_at FROM reaction_outbox " +
+            "WHERE id > ? AND id <= ? ORDER BY id LIMIT ?";
+    private static final String DELETE_OUTBOX_SQL = "DELETE FROM reaction_outbox WHERE id IN (";
+    private static final String UPDATE_STATS_SQL =
+            "UPDATE post_stats SET like_count = GREATEST(like_count + ?, 0), " +
+            "favorite_count = GREATEST(favorite_count + ?, 0) WHERE post_id = ?";
+
+    public enum ReactionType {
+        LIKE, FAVORITE
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private HotPostRankingService hotPostRankingService;
+
+    @Autowired
+    private UserReactionCache userReactionCache;
+
+    @Value("${reaction-pipeline.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${reaction-pipeline.batch-size:500}")
+    private int batchSize;
+
+    @Value("${reaction-pipeline.shutdown-timeout-ms:5000}")
+    private long shutdownTimeoutMs;
+
+    // 队列已满时请求等待空位的最长时间，超时返回503
+    @Value("${reaction-pipeline.enqueue-timeout-ms:2000}")
+    private long enqueueTimeoutMs;
+
+    @Value("${reaction-pipeline.retry-initial-ms:500}")
+    private long retryInitialMs;
+
+    @Value("${reaction-pipeline.retry-max-ms:30000}")
+    private long retryMaxMs;
+
+    private BlockingQueue<ReactionEvent> queue;
+    // 队列空位，先占位再写发件箱，写入后放入队列一定成功
+    private Semaphore slots;
+    private TransactionTemplate transactionTemplate;
+    private Thread consumer;
+    private volatile boolean running;
+
+    // 按(用户, 帖子, 类型)分段加锁，保证同一键的事件写入发件箱和进入队列的顺序一致
+    private final Object[] stripes = new Object[64];
+
+    private final AtomicLong appliedEvents = new AtomicLong();
+    private final AtomicLong rejectedEvents = new AtomicLong();
+    private final AtomicLong replayedEvents = new AtomicLong();
+    private final AtomicLong failedEvents = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private volatile LocalDateTime lastBatchTime;
+
+    @PostConstruct
+    public void init() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        slots = new Semaphore(queueCapacity);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Object();
+        }
+        running = true;
+    }
+
+    /**
+     * 启动后先重放发件箱中上次未写入的事件，再开始消费队列，保证旧事件先于新事件写入。
+     * 重放失败时退避重试，重放完成前不消费队列；关闭时仍未完成则直接退出，事件保留在发件箱中。
+     * 启动前已入队的事件也可能被重放，写入按最终状态进行，重复写入不影响结果
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        consumer = new Thread(() -> {
+            long backoff = retryInitialMs;
+            while (!replayOutbox()) {
+                if (!running || !sleep(backoff)) {
+                    logger.warn("发件箱重放未完成，停止消费，事件保留在发件箱中");
+                    return;
+                }
+                backoff = Math.min(backoff * 2, retryMaxMs);
+            }
+            consumeLoop();
+        }, "reaction-pipeline");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * 提交一个点赞/收藏事件，active为true表示点赞/收藏，false表示取消。
+     * 事件写入发件箱并进入队列后返回事件ID；队列持续已满或正在关闭时抛出ServiceUnavailableException
+     */
+    public long submit(Long userId, Long postId, ReactionType type, boolean active) {
+        if (!running || !acquireSlot()) {
+            rejectedEvents.incrementAndGet();
+            throw new ServiceUnavailableException("操作过于频繁，请稍后重试");
+        }
+        ReactionEvent event = new ReactionEvent(null, userId, postId, type, active, LocalDateTime.now());
+        try {
+            synchronized (stripes[Math.floorMod(Objects.hash(userId, postId, type), stripes.length)]) {
+                event.outboxId = insertOutbox(event);
+                // 已占位，不会阻塞
+                queue.add(event);
+            }
+        } catch (RuntimeException e) {
+            slots.release();
+            throw e;
+        }
+        return event.outboxId;
+    }
+
+    /**
+     * 管道状态，用于诊断接口
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("queued", queue.size());
+        stats.put("capacity", queueCapacity);
+        stats.put("appliedEvents", appliedEvents.get());
+        stats.put("rejectedEvents", rejectedEvents.get());
+        stats.put("replayedEvents", replayedEvents.get());
+        stats.put("failedEvents", failedEvents.get());
+        stats.put("retries", retries.get());
+        stats.put("lastBatchTime", lastBatchTime);
+        return stats;
+    }
+
+    private void consumeLoop() {
+        List<ReactionEvent> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                ReactionEvent first = queue.poll(500, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                slots.release(batch.size());
+                if (!applySafely(batch)) {
+                    // 正在关闭且数据库仍不可用：停止消费，未写入的事件保留在发件箱中，下次启动时按顺序重放
+                    logger.warn("关闭时数据库不可用，{} 个点赞/收藏事件保留在发件箱中", batch.size() + queue.size());
+                    return;
+                }
+            } catch (InterruptedException e) {
+                // 线程被中断视为关闭，继续循环写完队列中剩余的事件
+                running = false;
+            } catch (Exception e) {
+                logger.error("点赞/收藏事件处理异常: {}", e.getMessage(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 应用关闭前在限定时间内写完队列中的事件
+     */
+    @PreDestroy
+    public void stop() {
+        // 消费线程的poll带超时，置位后会自行写完剩余事件并退出
+        running = false;
+        if (consumer == null) {
+            return;
+        }
+        try {
+            consumer.join(shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            logger.warn("关闭前写入点赞/收藏事件超时（{} ms），{} 个事件保留在发件箱中，下次启动时重放",
+                    shutdownTimeoutMs, queue.size());
+        }
+    }
+
+    private boolean acquireSlot() {
+        try {
+            return slots.tryAcquire(enqueueTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private Long insertOutbox(ReactionEvent event) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement(INSERT_OUTBOX_SQL, Statement.RETURN_GENERATED_KEYS);
+            ps.setLong(1, event.userId);
+            ps.setLong(2, event.postId);
+            ps.setString(3, event.type.name());
+            ps.setBoolean(4, event.active);
+            ps.setTimestamp(5, Timestamp.valueOf(event.createdAt));
+            return ps;
+        }, keyHolder);
+        return keyHolder.getKey().longValue();
+    }
+
+    // 按ID顺序重放上次未写入的事件，maxId之后的事件已在本次进程的队列中；返回是否已全部重放
+    private boolean replayOutbox() {
+        long lastId = 0;
+        long replayed = 0;
+        try {
+            Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM reaction_outbox", Long.class);
+            while (maxId != null) {
+                List<ReactionEvent> events = jdbcTemplate.query(SELECT_OUTBOX_SQL, (rs, rowNum) -> new ReactionEvent(
+                        rs.getLong("id"),
+                        rs.getLong("user_id"),
+                        rs.getLong("post_id"),
+                        ReactionType.valueOf(rs.getString("type")),
+                        rs.getBoolean("active"),
+                        rs.getTimestamp("created_at").toLocalDateTime()), lastId, maxId, batchSize);
+                if (events.isEmpty()) {
+                    break;
+                }
+                if (!applySafely(events)) {
+                    return false;
+                }
+                replayed += events.size();
+                lastId = events.get(events.size() - 1).outboxId;
+            }
+            if (replayed > 0) {
+                logger.info("已重放发件箱中的点赞/收藏事件 {} 个", replayed);
+            }
+            return true;
+        } catch (Exception e) {
+            logger.error("重放点赞/收藏事件失败，稍后重试: {}", e.getMessage(), e);
+            return false;
+        } finally {
+            replayedEvents.addAndGet(replayed);
+        }
+    }
+
+    private void deleteOutbox(List<ReactionEvent> events) {
+        List<Object> ids = new ArrayList<>(events.size());
+        for (ReactionEvent event : events) {
+            ids.add(event.outboxId);
+        }
+        jdbcTemplate.update(DELETE_OUTBOX_SQL + String.join(", ", Collections.nCopies(ids.size(), "?")) + ")",
+                ids.toArray());
+    }
+
+    /**
+     * 写入一批事件。数据库暂时不可用时整批退避重试；其他错误时逐个写入，只丢弃无法写入的事件。
+     * 返回false表示正在关闭且仍未写入，调用方应停止处理后续事件
+     */
+    private boolean applySafely(List<ReactionEvent> events) {
+        long backoff = retryInitialMs;
+        while (true) {
+            try {
+                apply(events);
+                return true;
+            } catch (Exception e) {
+                if (!isTransient(e)) {
+                    return applyIndividually(events, e);
+                }
+                if (!running) {
+                    return false;
+                }
+                retries.incrementAndGet();
+                logger.warn("点赞/收藏事件写入时数据库暂时不可用，{} ms后重试: {}", backoff, e.getMessage());
+                if (!sleep(backoff)) {
+                    return false;
+                }
+                backoff = Math.min(backoff * 2, retryMaxMs);
+            }
+        }
+    }
+
+    private boolean applyIndividually(List<ReactionEvent> events, Exception cause) {
+        if (events.size() == 1) {
+            // 单个事件无法写入（例如帖子已被删除），丢弃并让该用户的缓存失效
+            failedEvents.incrementAndGet();
+            userReactionCache.evict(events.get(0).userId);
+            try {
+                deleteOutbox(events);
+            } catch (Exception ex) {
+                logger.warn("删除发件箱记录失败: {}", ex.getMessage());
+            }
+            logger.warn("点赞/收藏事件写入失败，已丢弃: {}", cause.getMessage());
+            return true;
+        }
+        // 整批失败时逐个重试，避免一个坏事件拖累整批
+        logger.warn("点赞/收藏事件批量写入失败，改为逐个写入: {}", cause.getMessage());
+        for (ReactionEvent event : events) {
+            List<ReactionEvent> single = new ArrayList<>(1);
+            single.add(event);
+            if (!applySafely(single)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 连接断开、锁等待超时、提交失败等可以重试的错误；写入按最终状态进行，重试不会重复计数
+    private static boolean isTransient(Exception e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof CannotCreateTransactionException
+                || e instanceof TransactionSystemException;
+    }
+
+    // 返回false表示等待期间线程被中断
+    private boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            running = false;
+            return false;
+        }
+    }
+
+    private void apply(List<ReactionEvent> events) {
+        Collection<ReactionEvent> merged = coalesce(events);
+
+        List<ReactionEvent> likeAdds = new ArrayList<>();
+        List<ReactionEvent> likeRemoves = new ArrayList<>();
+        List<ReactionEvent> favoriteAdds = new ArrayList<>();
+        List<ReactionEvent> favoriteRemoves = new ArrayList<>();
+        for (ReactionEvent event : merged) {
+            if (event.type == ReactionType.LIKE) {
+                (event.active ? likeAdds : likeRemoves).add(event);
+            } else {
+                (event.active ? favoriteAdds : favoriteRemoves).add(event);
+            }
+        }
+
+        // 帖子ID -> [点赞增量, 收藏增量]，按帖子ID排序以保证加锁顺序一致
+        Map<Long, int[]> deltas = transactionTemplate.execute(status -> {
+            Map<Long, int[]> result = new TreeMap<>();
+            collectDeltas(result, likeAdds, INSERT_LIKE_SQL, true, 0, 1);
+            collectDeltas(result, likeRemoves, DELETE_LIKE_SQL, false, 0, -1);
+            collectDeltas(result, favoriteAdds, INSERT_FAVORITE_SQL, true, 1, 1);
+            collectDeltas(result, favoriteRemoves, DELETE_FAVORITE_SQL, false, 1, -1);
+
+            List<Object[]> statsArgs = new ArrayList<>();
+            result.forEach((postId, delta) -> {
+                if (delta[0] != 0 || delta[1] != 0) {
+                    statsArgs.add(new Object[]{delta[0], delta[1], postId});
+                }
+            });
+            if (!statsArgs.isEmpty()) {
+                jdbcTemplate.batchUpdate(UPDATE_STATS_SQL, statsArgs);
+            }
+            deleteOutbox(events);
+            return result;
+        });
+
+        // 提交成功后再同步热榜索引，并移除用户缓存中对应的待重放变更
+        for (ReactionEvent event : events) {
+            userReactionCache.onCommitted(event.userId, event.outboxId);
+        }
+        if (deltas != null) {
+            deltas.forEach((postId, delta) -> {
+                if (delta[0] != 0) {
+                    hotPostRankingService.onLikeChanged(postId, delta[0]);
+                }
+                if (delta[1] != 0) {
+                    hotPostRankingService.onFavoriteChanged(postId, delta[1]);
+                }
+            });
+        }
+
+        appliedEvents.addAndGet(events.size());
+        lastBatchTime = LocalDateTime.now();
+    }
+
+    // 同一用户对同一帖子的同类事件只保留最后一次的状态
+    private Collection<ReactionEvent> coalesce(List<ReactionEvent> events) {
+        Map<ReactionKey, ReactionEvent> latest = new LinkedHashMap<>();
+        for (ReactionEvent event : events) {
+            latest.put(new ReactionKey(event.userId, event.postId, event.type), event);
+        }
+        return latest.values();
+    }
+
+    // 执行一批写入，只有实际影响了行的事件才计入增量
+    private void collectDeltas(Map<Long, int[]> deltas, List<ReactionEvent> events, String sql,
+                               boolean insert, int slot, int sign) {
+        if (events.isEmpty()) {
+            return;
+        }
+        List<Object[]> args = new ArrayList<>(events.size());
+        for (ReactionEvent event : events) {
+            args.add(insert
+                    ? new Object[]{event.userId, event.postId, event.createdAt}
+                    : new Object[]{event.userId, event.postId});
+        }
+        int[] affected = jdbcTemplate.batchUpdate(sql, args);
+        for (int i = 0; i < affected.length; i++) {
+            if (affected[i] > 0) {
+                deltas.computeIfAbsent(events.get(i).postId, id -> new int[2])[slot] += sign;
+            }
+        }
+    }
+
+    private static class ReactionEvent {
+        private Long outboxId;
+        private final Long userId;
+        private final Long postId;
+        private final ReactionType type;
+        private final boolean active;
+        private final LocalDateTime createdAt;
+
+        ReactionEvent(Long outboxId, Long userId, Long postId, ReactionType type, boolean active,
+                      LocalDateTime createdAt) {
+            this.outboxId = outboxId;
+            this.userId = userId;
+            this.postId = postId;
+            this.type = type;
+            this.active = active;
+            this.createdAt = createdAt;
+        }
+    }
+
+    private static class ReactionKey {
+        private final Long userId;
+        private final Long postId;
+        private final ReactionType type;
+
+        ReactionKey(Long userId, Long postId, ReactionType type) {
+            this.userId = userId;
+            this.postId = postId;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ReactionKey)) {
+                return false;
+            }
+            ReactionKey other = (ReactionKey) o;
+            return userId.equals(other.userId) && postId.equals(other.postId) && type == other.type;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, postId, type);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.jinshuxqm.community.service;
+
+import com.jinshuxqm.community.dto.SseEnvelope;
+
+import java.util.function.Consumer;
+
+/**
+ * SSE事件广播总线
+ * 多节点部署时，一个节点发布的事件需要送达所有节点，由持有目标用户连接的节点推送给客户端。
+ * 默认实现只在本进程内分发，多节点部署时替换为基于消息中间件的实现即可
+ */
+public interface SseBroadcastBus {
+
+    /**
+     * 发布事件到所有节点
+     * @param envelope 事件
+     */
+    void publish(SseEnvelope envelope);
+
+    /**
+     * 订阅本节点收到的事件
+     * @param listener 事件处理器，不应阻塞
+     */
+    void subscribe(Consumer<SseEnvelope> listener);
+}
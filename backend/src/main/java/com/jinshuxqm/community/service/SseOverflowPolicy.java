@@ -0,0 +1,19 @@
+package com.jinshuxqm.community.service;
+
+/**
+ * SSE连接发送队列已满时的处理策略
+ */
+public enum SseOverflowPolicy {
+    /**
+     * 未读计数事件只保留最新一条；队列仍满时丢弃最旧的事件
+     */
+    COALESCE,
+    /**
+     * 丢弃最旧的事件
+     */
+    DROP_OLDEST,
+    /**
+     * 断开连接，由客户端重连
+     */
+    DISCONNECT
+}
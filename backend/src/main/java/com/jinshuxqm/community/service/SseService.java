@@ -3,6 +3,8 @@ package com.jinshuxqm.community.service;
 import com.jinshuxqm.community.dto.PrivateMessageDTO;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.util.Map;
+
 /**
  * 服务器发送事件(SSE)服务接口
  * 用于管理SSE连接和发送事件
@@ -16,12 +18,22 @@ public interface SseService {
      */
     SseEmitter createConnection(Long userId);
     
+    /**
+     * 为重连的用户创建SSE连接，补发lastEventId之后错过的事件；
+     * 事件ID只在发出它的节点内有效，错过的事件已不在缓冲区中或ID来自其他节点时发送resync事件，由客户端重新加载
+     * @param userId 用户ID
+     * @param lastEventId 客户端收到的最后一个事件ID，为空时不补发
+     * @return SSE发射器
+     */
+    SseEmitter createConnection(Long userId, String lastEventId);
+    
     /**
      * 发送私信事件通知
      * @param userId 接收通知的用户ID
      * @param message 私信内容
+     * @param unreadCount 接收者当前的未读消息数
      */
-    void sendPrivateMessageEvent(Long userId, PrivateMessageDTO message);
+    void sendPrivateMessageEvent(Long userId, PrivateMessageDTO message, int unreadCount);
     
     /**
      * 发送未读消息计数更新通知
@@ -35,4 +47,10 @@ public interface SseService {
      * @param userId 用户ID
      */
     void closeConnection(Long userId);
+    
+    /**
+     * 获取连接和发送队列的统计信息
+     * @return 连接数、队列深度、丢弃事件数等
+     */
+    Map<String, Object> getStats();
 } 
\ No newline at end of file
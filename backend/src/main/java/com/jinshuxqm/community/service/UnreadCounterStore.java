@@ -0,0 +1,122 @@
+package com.jinshuxqm.community.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.jinshuxqm.community.repository.ConversationInboxRepository;
+import com.jinshuxqm.community.repository.MessageConversationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 用户私信未读总数计数器
+ * 首次访问时从会话表中该用户一方的未读数求和加载，之后由发送消息、标记已读增量更新，
+ * 不再为了计数加载所有未读消息。条目写入一段时间后过期，下次访问重新从会话表校准。
+ * 写操作开始前领取写序号，条目记录加载完成时的写序号：序号不大于该值的写操作可能已被加载结果包含，
+ * 提交后不再叠加增量而是让条目失效重新加载，避免重复计数
+ */
+@Service
+public class UnreadCounterStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(UnreadCounterStore.class);
+
+    @Autowired
+    private MessageConversationRepository conversationRepository;
+
+    @Autowired
+    private ConversationInboxRepository conversationInboxRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${unread-counter.max-users:100000}")
+    private long maxUsers;
+
+    @Value("${unread-counter.resync-minutes:10}")
+    private long resyncMinutes;
+
+    private Cache<Long, Counter> counters;
+
+    private final AtomicLong writeSeq = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        counters = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterWrite(resyncMinutes, TimeUnit.MINUTES)
+                .build();
+    }
+
+    /**
+     * 启动时根据消息表重新计算会话双方的未读数并同步到收件箱，修正历史数据
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        try {
+            long start = System.currentTimeMillis();
+            Integer updated = new TransactionTemplate(transactionManager)
+                    .execute(status -> {
+                        int count = conversationRepository.recalculateUnreadCounts();
+                        conversationInboxRepository.syncUnreadCounts();
+                        return count;
+                    });
+            counters.invalidateAll();
+            logger.info("会话未读数校准完成，共 {} 个会话，耗时 {} ms", updated, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            logger.error("会话未读数校准失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 获取用户的未读消息总数
+     */
+    public int get(Long userId) {
+        return counters.get(userId, this::load).count;
+    }
+
+    /**
+     * 领取写序号，需在事务中修改会话表的未读数之前调用，提交后连同增量传给{@link #add}
+     */
+    public long beginWrite() {
+        return writeSeq.incrementAndGet();
+    }
+
+    /**
+     * 调整用户的未读消息总数并返回调整后的值，结果不会小于0。
+     * 需在会话表的修改提交后调用：条目在写操作开始之后才加载完成时才叠加增量，
+     * 否则加载结果可能已包含本次修改，条目失效后重新从数据库加载
+     */
+    public int add(Long userId, int delta, long writeSeq) {
+        // computeIfPresent会等待同一用户正在进行的加载
+        Counter counter = counters.asMap().computeIfPresent(userId, (id, current) -> writeSeq > current.loadedSeq
+                ? new Counter(Math.max(0, current.count + delta), current.loadedSeq)
+                : null);
+        return counter != null ? counter.count : get(userId);
+    }
+
+    private Counter load(Long userId) {
+        int count = (int) conversationRepository.sumUnreadCountForUser(userId);
+        // 查询返回后再读取序号，此后开始的写操作一定不在加载结果中
+        return new Counter(count, writeSeq.get());
+    }
+
+    private static class Counter {
+        private final int count;
+        private final long loadedSeq;
+
+        Counter(int count, long loadedSeq) {
+            this.count = count;
+            this.loadedSeq = loadedSeq;
+        }
+    }
+}
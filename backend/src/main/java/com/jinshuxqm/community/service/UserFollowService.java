@@ -8,6 +8,8 @@ import com.jinshuxqm.community.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.List;
 import java.util.stream.Collectors;
@@ -21,6 +23,9 @@ public class UserFollowService {
     @Autowired
     private UserRepository userRepository;
     
+    @Autowired
+    private UserTypeaheadIndex userTypeaheadIndex;
+    
     /**
      * Follow a user
      * @param followerId the ID of the follower
@@ -53,6 +58,7 @@ public class UserFollowService {
         userFollow.setFollowee(followee);
         
         userFollowRepository.save(userFollow);
+        afterCommit(() -> userTypeaheadIndex.onFollowerChanged(followeeId, 1));
         return true;
     }
     
@@ -70,6 +76,7 @@ public class UserFollowService {
         }
         
         userFollowRepository.deleteByFollowerIdAndFolloweeId(followerId, followeeId);
+        afterCommit(() -> userTypeaheadIndex.onFollowerChanged(followeeId, -1));
         return true;
     }
     
@@ -122,4 +129,18 @@ public class UserFollowService {
     public Long countFollowing(Long userId) {
         return userFollowRepository.countFollowingByUserId(userId);
     }
-} 
\ No newline at end of file
+
+    // 事务提交后执行，回滚的关注/取关不会更新联想索引
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,304 @@
+package com.jinshuxqm.community.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.jinshuxqm.community.repository.PostFavoriteRepository;
+import com.jinshuxqm.community.repository.PostLikeRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 活跃用户的点赞/收藏帖子ID缓存
+ * 每个用户的帖子ID保存为有序long数组，渲染信息流时二分查找即可判断是否点赞/收藏，无需访问数据库。
+ * 用户首次请求信息流时加载，按总内存预算和空闲时间淘汰。
+ *
+ * 点赞/收藏由事件管道异步写入数据库，加载时读到的可能是旧状态，因此尚未写入的变更同时记入日志，
+ * 加载完成后按顺序重放。日志条目在事件管道提交后移除，超过保留时间的条目在每次追加时清理。
+ * 加载和变更都通过同一用户的原子计算执行，加载期间的变更会等待加载完成后再应用
+ */
+@Service
+public class UserReactionCache {
+
+    // 每个用户条目的固定开销估算（字节）
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+
+    @Autowired
+    private PostLikeRepository postLikeRepository;
+
+    @Autowired
+    private PostFavoriteRepository postFavoriteRepository;
+
+    @Value("${reaction-cache.max-bytes:33554432}")
+    private long maxBytes;
+
+    @Value("${reaction-cache.idle-minutes:30}")
+    private long idleMinutes;
+
+    // 单个用户最多缓存的帖子ID数，超过后该用户改为按页查询数据库
+    @Value("${reaction-cache.max-ids-per-user:50000}")
+    private int maxIdsPerUser;
+
+    // 未提交的变更最多保留多久（秒），需大于事件管道写入数据库的延迟
+    @Value("${reaction-cache.journal-seconds:60}")
+    private long journalSeconds;
+
+    private Cache<Long, UserReactions> cache;
+
+    // 用户ID -> 尚未提交的变更，按发生顺序；整个键的过期只用于清理之后不再有变更的用户
+    private Cache<Long, List<JournalEntry>> journal;
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Long userId, UserReactions reactions) -> reactions.weight())
+                .expireAfterAccess(idleMinutes, TimeUnit.MINUTES)
+                .build();
+        journal = Caffeine.newBuilder()
+                .expireAfterWrite(journalSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 获取用户的点赞/收藏集合，首次访问时从数据库加载；
+     * 集合过大不适合缓存时返回null，由调用方回退到按页查询，过大的标记同样缓存，不会每次重新加载
+     */
+    public UserReactions get(Long userId) {
+        UserReactions reactions = cache.get(userId, this::load);
+        return reactions.oversized ? null : reactions;
+    }
+
+    // eventId为事件管道返回的事件ID，提交后据此移除日志条目
+    public void onLiked(Long userId, Long postId, long eventId) {
+        mutate(userId, eventId, reactions -> reactions.likes.add(postId));
+    }
+
+    public void onUnliked(Long userId, Long postId, long eventId) {
+        mutate(userId, eventId, reactions -> reactions.likes.remove(postId));
+    }
+
+    public void onFavorited(Long userId, Long postId, long eventId) {
+        mutate(userId, eventId, reactions -> reactions.favorites.add(postId));
+    }
+
+    public void onUnfavorited(Long userId, Long postId, long eventId) {
+        mutate(userId, eventId, reactions -> reactions.favorites.remove(postId));
+    }
+
+    /**
+     * 事件管道提交事件后调用，数据库中已有该变更，不再需要重放
+     */
+    public void onCommitted(Long userId, long eventId) {
+        long now = System.currentTimeMillis();
+        journal.asMap().computeIfPresent(userId, (id, entries) -> {
+            entries.removeIf(entry -> entry.eventId == eventId || isExpired(entry, now));
+            return entries.isEmpty() ? null : entries;
+        });
+    }
+
+    /**
+     * 移除用户的缓存集合，下次访问时重新加载
+     */
+    public void evict(Long userId) {
+        // 写入失败的事件已被丢弃，对应的变更不能再重放
+        journal.invalidate(userId);
+        cache.invalidate(userId);
+    }
+
+    /**
+     * 帖子删除后，从已缓存用户的集合中移除
+     */
+    public void onPostDeleted(Long postId) {
+        for (Long userId : cache.asMap().keySet()) {
+            cache.asMap().computeIfPresent(userId, (id, reactions) -> {
+                if (!reactions.oversized) {
+                    reactions.likes.remove(postId);
+                    reactions.favorites.remove(postId);
+                }
+                return reactions;
+            });
+        }
+    }
+
+    // 在同一用户的原子计算中记录变更并应用到已缓存的集合；
+    // 正在加载时会等待加载完成，返回原对象使条目重新计算权重。已标记为过大的用户不会重放，不记日志
+    private void mutate(Long userId, long eventId, Consumer<UserReactions> mutation) {
+        cache.asMap().compute(userId, (id, reactions) -> {
+            if (reactions != null && reactions.oversized) {
+                return reactions;
+            }
+            long now = System.currentTimeMillis();
+            journal.asMap().compute(id, (key, entries) -> {
+                List<JournalEntry> updated = entries != null ? entries : new ArrayList<>();
+                updated.removeIf(entry -> isExpired(entry, now));
+                updated.add(new JournalEntry(eventId, now, mutation));
+                return updated;
+            });
+            if (reactions != null) {
+                mutation.accept(reactions);
+            }
+            return reactions;
+        });
+    }
+
+    private boolean isExpired(JournalEntry entry, long now) {
+        return now - entry.recordedAt > TimeUnit.SECONDS.toMillis(journalSeconds);
+    }
+
+    // 在cache.get的原子计算中执行，期间同一用户的变更会等待
+    private UserReactions load(Long userId) {
+        // 先取日志再查询数据库：取日志之后才提交并移除的变更一定在查询结果中
+        List<JournalEntry> pending = new ArrayList<>();
+        journal.asMap().computeIfPresent(userId, (id, entries) -> {
+            pending.addAll(entries);
+            return entries;
+        });
+
+        List<Long> likedIds = postLikeRepository.findAllLikedPostIds(userId);
+        if (likedIds.size() > maxIdsPerUser) {
+            return UserReactions.OVERSIZED;
+        }
+        List<Long> favoritedIds = postFavoriteRepository.findAllFavoritedPostIds(userId);
+        if (favoritedIds.size() > maxIdsPerUser) {
+            return UserReactions.OVERSIZED;
+        }
+
+        UserReactions loaded = new UserReactions(toSortedArray(likedIds), toSortedArray(favoritedIds));
+        // 重放尚未提交的变更：已写入的重放一次结果不变
+        for (JournalEntry entry : pending) {
+            entry.mutation.accept(loaded);
+        }
+        return loaded;
+    }
+
+    private static long[] toSortedArray(List<Long> ids) {
+        long[] array = ids.stream().mapToLong(Long::longValue).distinct().toArray();
+        Arrays.sort(array);
+        return array;
+    }
+
+    // 一条尚未提交的变更
+    private static class JournalEntry {
+        private final long eventId;
+        private final long recordedAt;
+        private final Consumer<UserReactions> mutation;
+
+        JournalEntry(long eventId, long recordedAt, Consumer<UserReactions> mutation) {
+            this.eventId = eventId;
+            this.recordedAt = recordedAt;
+            this.mutation = mutation;
+        }
+    }
+
+    /**
+     * 单个用户的点赞和收藏集合
+     */
+    public static class UserReactions {
+        // 集合过大不缓存的标记
+        private static final UserReactions OVERSIZED = new UserReactions(new long[0], new long[0], true);
+
+        private final SortedIdSet likes;
+        private final SortedIdSet favorites;
+        private final boolean oversized;
+
+        UserReactions(long[] likedIds, long[] favoritedIds) {
+            this(likedIds, favoritedIds, false);
+        }
+
+        private UserReactions(long[] likedIds, long[] favoritedIds, boolean oversized) {
+            this.likes = new SortedIdSet(likedIds);
+            this.favorites = new SortedIdSet(favoritedIds);
+            this.oversized = oversized;
+        }
+
+        public boolean isLiked(Long postId) {
+            return likes.contains(postId);
+        }
+
+        public boolean isFavorited(Long postId) {
+            return favorites.contains(postId);
+        }
+
+        // 从给定帖子中筛选出已点赞的ID
+        public Set<Long> likedAmong(Collection<Long> postIds) {
+            return likes.retain(postIds);
+        }
+
+        // 从给定帖子中筛选出已收藏的ID
+        public Set<Long> favoritedAmong(Collection<Long> postIds) {
+            return favorites.retain(postIds);
+        }
+
+        int weight() {
+            long bytes = ENTRY_OVERHEAD_BYTES + (long) (likes.size() + favorites.size()) * Long.BYTES;
+            return (int) Math.min(Integer.MAX_VALUE, bytes);
+        }
+    }
+
+    /**
+     * 有序long数组实现的ID集合，读多写少：读取无锁，写入时复制
+     */
+    private static class SortedIdSet {
+        private volatile long[] ids;
+
+        SortedIdSet(long[] ids) {
+            this.ids = ids;
+        }
+
+        boolean contains(long id) {
+            return Arrays.binarySearch(ids, id) >= 0;
+        }
+
+        int size() {
+            return ids.length;
+        }
+
+        Set<Long> retain(Collection<Long> candidates) {
+            long[] snapshot = ids;
+            Set<Long> result = new HashSet<>();
+            for (Long id : candidates) {
+                if (id != null && Arrays.binarySearch(snapshot, id) >= 0) {
+                    result.add(id);
+                }
+            }
+            return result;
+        }
+
+        synchronized void add(long id) {
+            long[] current = ids;
+            int index = Arrays.binarySearch(current, id);
+            if (index >= 0) {
+                return;
+            }
+            int insertAt = -index - 1;
+            long[] updated = new long[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, insertAt);
+            updated[insertAt] = id;
+            System.arraycopy(current, insertAt, updated, insertAt + 1, current.length - insertAt);
+            ids = updated;
+        }
+
+        synchronized void remove(long id) {
+            long[] current = ids;
+            int index = Arrays.binarySearch(current, id);
+            if (index < 0) {
+                return;
+            }
+            long[] updated = new long[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+            ids = updated;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package com.jinshuxqm.community.service;
+
+import com.jinshuxqm.community.dto.UserSuggestionDTO;
+import com.jinshuxqm.community.model.User;
+import com.jinshuxqm.community.repository.UserFollowRepository;
+import com.jinshuxqm.community.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 用户名/昵称前缀联想索引
+ * 小写后的用户名和昵称存放在有序跳表中，前缀查询只扫描匹配区间，按粉丝数取前k个；
+ * 一两个字的短前缀匹配的用户太多，改为读取按前缀维护的热门用户列表。
+ * 注册、修改资料、关注/取关时增量更新，并定期从数据库全量校准；重建期间的资料更新记入日志，替换前重放到新索引，
+ * 粉丝数变化的用户只记录ID，替换前重新从数据库读取粉丝数（增量重放可能与全量统计重复计入）
+ */
+@Service
+public class UserTypeaheadIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserTypeaheadIndex.class);
+
+    // 名称和用户ID之间的分隔符，保证同名用户各占一个键且前缀区间不受影响
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    // 单次联想最多返回的用户数
+    public static final int MAX_LIMIT = 20;
+
+    // 不超过此长度的前缀读取热门用户列表，不扫描跳表区间
+    private static final int SHORT_PREFIX_LENGTH = 2;
+
+    // 每个短前缀保留的热门用户数，留出余量以免粉丝数变化后列表外的用户本应进入前列
+    private static final int TOP_CAPACITY = MAX_LIMIT * 2;
+
+    private static final Comparator<UserEntry> BY_POPULARITY = Comparator
+            .comparingInt((UserEntry entry) -> entry.followerCount.get())
+            .thenComparing(entry -> entry.id, Comparator.reverseOrder());
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserFollowRepository userFollowRepository;
+
+    private volatile Snapshot snapshot = new Snapshot();
+
+    // 重建期间的增量更新，不为null表示正在重建；与增量更新和索引替换共用journalLock
+    private List<Consumer<Snapshot>> journal;
+
+    // 重建期间粉丝数变化的用户，与journal同时创建和清空
+    private Set<Long> journaledFollowees;
+
+    private final Object journalLock = new Object();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    /**
+     * 从数据库全量重建索引
+     */
+    @Scheduled(fixedDelayString = "${typeahead.resync-interval-ms:3600000}",
+               initialDelayString = "${typeahead.resync-interval-ms:3600000}")
+    public synchronized void rebuild() {
+        synchronized (journalLock) {
+            journal = new ArrayList<>();
+            journaledFollowees = new HashSet<>();
+        }
+        try {
+            long start = System.currentTimeMillis();
+            Map<Long, Integer> followerCounts = new HashMap<>();
+            for (Object[] row : userFollowRepository.countFollowersGroupByFollowee()) {
+                followerCounts.put((Long) row[0], ((Number) row[1]).intValue());
+            }
+
+            Snapshot rebuilt = new Snapshot();
+            for (Object[] row : userRepository.findAllSummaries()) {
+                Long id = (Long) row[0];
+                UserEntry entry = new UserEntry(id, (String) row[1], (String) row[2], (String) row[3],
+                        followerCounts.getOrDefault(id, 0));
+                rebuilt.put(entry);
+            }
+            int replayed;
+            synchronized (journalLock) {
+                replayed = journal.size();
+                for (Consumer<Snapshot> update : journal) {
+                    update.accept(rebuilt);
+                }
+                // 重建期间的关注变化可能已包含在全量统计中，直接读取当前粉丝数
+                for (Long followeeId : journaledFollowees) {
+                    Long count = userFollowRepository.countFollowersByUserId(followeeId);
+                    rebuilt.setFollowers(followeeId, count != null ? count.intValue() : 0);
+                }
+                replayed += journaledFollowees.size();
+                snapshot = rebuilt;
+                journal = null;
+                journaledFollowees = null;
+            }
+            logger.info("用户联想索引重建完成，共 {} 个用户，重放增量更新 {} 条，耗时 {} ms",
+                    rebuilt.entries.size(), replayed, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            logger.error("用户联想索引重建失败: {}", e.getMessage(), e);
+            synchronized (journalLock) {
+                journal = null;
+                journaledFollowees = null;
+            }
+        }
+    }
+
+    /**
+     * 按前缀查找用户名或昵称匹配的用户，按粉丝数从高到低返回前limit个
+     */
+    public List<UserSuggestionDTO> suggest(String prefix, int limit) {
+        if (prefix == null || prefix.isBlank() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        limit = Math.min(limit, MAX_LIMIT);
+        String normalized = normalize(prefix);
+        Snapshot current = snapshot;
+
+        if (normalized.codePointCount(0, normalized.length()) <= SHORT_PREFIX_LENGTH) {
+            List<UserEntry> top = current.topUsers(normalized);
+            List<UserSuggestionDTO> result = new ArrayList<>(Math.min(limit, top.size()));
+            for (UserEntry entry : top.subList(0, Math.min(limit, top.size()))) {
+                result.add(toSuggestion(entry));
+            }
+            return result;
+        }
+
+        // 小顶堆保留粉丝数最多的limit个用户
+        PriorityQueue<UserEntry> top = new PriorityQueue<>(limit + 1, BY_POPULARITY);
+        Set<Long> seen = new HashSet<>();
+        for (Long id : current.names.subMap(normalized, normalized + Character.MAX_VALUE).values()) {
+            // 用户名和昵称可能同时命中
+            if (!seen.add(id)) {
+                continue;
+            }
+            UserEntry entry = current.entries.get(id);
+            if (entry == null) {
+                continue;
+            }
+            top.offer(entry);
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+
+        List<UserSuggestionDTO> result = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            result.add(toSuggestion(top.poll()));
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * 用户注册或修改资料后更新索引
+     */
+    public void onUserSaved(User user) {
+        Long id = user.getId();
+        String username = user.getUsername();
+        String nickname = user.getNickname();
+        String avatar = user.getAvatar();
+        apply(target -> {
+            UserEntry existing = target.entries.get(id);
+            int followers = existing != null ? existing.followerCount.get() : 0;
+            target.put(new UserEntry(id, username, nickname, avatar, followers));
+        });
+    }
+
+    /**
+     * 关注/取关提交后调用，事务回滚时不应调用
+     */
+    public void onFollowerChanged(Long userId, int delta) {
+        synchronized (journalLock) {
+            snapshot.adjustFollowers(userId, delta);
+            if (journaledFollowees != null) {
+                journaledFollowees.add(userId);
+            }
+        }
+    }
+
+    // 更新当前索引；正在重建时同时记入日志，替换前重放到新索引
+    private void apply(Consumer<Snapshot> update) {
+        synchronized (journalLock) {
+            update.accept(snapshot);
+            if (journal != null) {
+                journal.add(update);
+            }
+        }
+    }
+
+    private static UserSuggestionDTO toSuggestion(UserEntry entry) {
+        return new UserSuggestionDTO(entry.id, entry.username, entry.nickname, entry.avatar,
+                entry.followerCount.get());
+    }
+
+    private static String normalize(String name) {
+        return name.trim().toLowerCase();
+    }
+
+    // 名称的各个短前缀
+    private static List<String> shortPrefixes(String normalizedName) {
+        List<String> prefixes = new ArrayList<>(SHORT_PREFIX_LENGTH);
+        int end = 0;
+        for (int i = 0; i < SHORT_PREFIX_LENGTH && end < normalizedName.length(); i++) {
+            end += Character.charCount(normalizedName.codePointAt(end));
+            prefixes.add(normalizedName.substring(0, end));
+        }
+        return prefixes;
+    }
+
+    // 一次完整的索引数据，重建时整体替换
+    private static class Snapshot {
+        // 小写名称 + 分隔符 + 用户ID -> 用户ID
+        private final ConcurrentSkipListMap<String, Long> names = new ConcurrentSkipListMap<>();
+        private final ConcurrentHashMap<Long, UserEntry> entries = new ConcurrentHashMap<>();
+        // 短前缀 -> 粉丝数最多的用户（无序，读取时排序），访问时需锁住列表
+        private final ConcurrentHashMap<String, List<UserEntry>> topByPrefix = new ConcurrentHashMap<>();
+
+        void put(UserEntry entry) {
+            UserEntry previous = entries.put(entry.id, entry);
+            if (previous != null) {
+                for (String key : previous.keys()) {
+                    names.remove(key);
+                }
+                for (String prefix : previous.prefixes()) {
+                    List<UserEntry> top = topByPrefix.get(prefix);
+                    if (top != null) {
+                        synchronized (top) {
+                            top.removeIf(e -> e.id.equals(entry.id));
+                        }
+                    }
+                }
+            }
+            for (String key : entry.keys()) {
+                names.put(key, entry.id);
+            }
+            offerTop(entry);
+        }
+
+        void setFollowers(Long userId, int count) {
+            UserEntry entry = entries.get(userId);
+            if (entry == null) {
+                return;
+            }
+            entry.followerCount.set(count);
+            offerTop(entry);
+        }
+
+        void adjustFollowers(Long userId, int delta) {
+            UserEntry entry = entries.get(userId);
+            if (entry == null) {
+                return;
+            }
+            entry.followerCount.updateAndGet(count -> Math.max(0, count + delta));
+            if (delta > 0) {
+                offerTop(entry);
+            }
+        }
+
+        List<UserEntry> topUsers(String prefix) {
+            List<UserEntry> top = topByPrefix.get(prefix);
+            if (top == null) {
+                return Collections.emptyList();
+            }
+            List<UserEntry> sorted;
+            synchronized (top) {
+                sorted = new ArrayList<>(top);
+            }
+            sorted.sort(BY_POPULARITY.reversed());
+            return sorted;
+        }
+
+        // 放入用户所有短前缀的热门列表，超出容量时淘汰粉丝数最少的
+        private void offerTop(UserEntry entry) {
+            for (String prefix : entry.prefixes()) {
+                List<UserEntry> top = topByPrefix.computeIfAbsent(prefix, p -> new ArrayList<>());
+                synchronized (top) {
+                    top.removeIf(e -> e.id.equals(entry.id));
+                    top.add(entry);
+                    if (top.size() > TOP_CAPACITY) {
+                        top.remove(Collections.min(top, BY_POPULARITY));
+                    }
+                }
+            }
+        }
+    }
+
+    private static class UserEntry {
+        private final Long id;
+        private final String username;
+        private final String nickname;
+        private final String avatar;
+        private final AtomicInteger followerCount;
+
+        UserEntry(Long id, String username, String nickname, String avatar, int followerCount) {
+            this.id = id;
+            this.username = username;
+            this.nickname = nickname;
+            this.avatar = avatar;
+            this.followerCount = new AtomicInteger(followerCount);
+        }
+
+        Set<String> prefixes() {
+            Set<String> prefixes = new HashSet<>();
+            if (username != null && !username.isBlank()) {
+                prefixes.addAll(shortPrefixes(normalize(username)));
+            }
+            if (nickname != null && !nickname.isBlank()) {
+                prefixes.addAll(shortPrefixes(normalize(nickname)));
+            }
+            return prefixes;
+        }
+
+        List<String> keys() {
+            List<String> keys = new ArrayList<>(2);
+            if (username != null && !username.isBlank()) {
+                keys.add(normalize(username) + KEY_SEPARATOR + id);
+            }
+            if (nickname != null && !nickname.isBlank()) {
+                keys.add(normalize(nickname) + KEY_SEPARATOR + id);
+            }
+            return keys;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.jinshuxqm.community.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 帖子浏览量写回缓冲
+ * 浏览请求只在内存中累加增量，由定时任务按固定间隔批量写入post_stats，
+ * 避免每次浏览都开启独立事务并对同一行加锁。整个间隔内没有浏览的帖子在写入时移除计数器，缓冲只保留近期被浏览的帖子
+ */
+@Service
+public class ViewCountBuffer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ViewCountBuffer.class);
+
+    private static final String FLUSH_SQL = "UPDATE post_stats SET view_count = view_count + ? WHERE post_id = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${view-count.shutdown-flush-timeout-ms:5000}")
+    private long shutdownFlushTimeoutMs;
+
+    // 帖子ID -> 待写入的浏览增量，LongAdder内部分段计数，热门帖子并发浏览时不会争用同一个计数器
+    private final ConcurrentHashMap<Long, LongAdder> pending = new ConcurrentHashMap<>();
+
+    private final Object flushLock = new Object();
+
+    private final AtomicLong flushedTotal = new AtomicLong();
+    private volatile LocalDateTime lastFlushTime;
+
+    /**
+     * 记录一次浏览
+     */
+    public void record(Long postId) {
+        LongAdder adder = pending.computeIfAbsent(postId, id -> new LongAdder());
+        adder.increment();
+        // 计数器只在总和为0时被flush移除；累加前已被移除时，这次浏览转入新的计数器
+        if (pending.get(postId) != adder) {
+            pending.computeIfAbsent(postId, id -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * 获取帖子尚未写入数据库的浏览增量
+     */
+    public long getPending(Long postId) {
+        LongAdder adder = pending.get(postId);
+        return adder != null ? adder.sum() : 0;
+    }
+
+    /**
+     * 帖子删除后丢弃其待写入的增量
+     */
+    public void discard(Long postId) {
+        pending.remove(postId);
+    }
+
+    /**
+     * 所有帖子待写入的浏览增量之和
+     */
+    public long getPendingDeltaCount() {
+        long total = 0;
+        for (LongAdder adder : pending.values()) {
+            total += adder.sum();
+        }
+        return total;
+    }
+
+    /**
+     * 缓冲状态，用于诊断接口
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("pendingDeltas", getPendingDeltaCount());
+        stats.put("trackedPosts", pending.size());
+        stats.put("flushedTotal", flushedTotal.get());
+        stats.put("lastFlushTime", lastFlushTime);
+        return stats;
+    }
+
+    /**
+     * 定时将累计的增量批量写入数据库
+     */
+    @Scheduled(fixedDelayString = "${view-count.flush-interval-ms:5000}")
+    public void flush() {
+        synchronized (flushLock) {
+            List<Long> postIds = new ArrayList<>();
+            List<Object[]> batchArgs = new ArrayList<>();
+            List<Long> idlePostIds = new ArrayList<>();
+
+            // 按帖子ID顺序写入，保证并发事务之间的加锁顺序一致
+            pending.keySet().stream().sorted().forEach(postId -> {
+                LongAdder adder = pending.get(postId);
+                if (adder == null) {
+                    return;
+                }
+                // sumThenReset逐个分段原子清零，并发的累加要么计入本轮，要么留给下一轮
+                long delta = adder.sumThenReset();
+                if (delta > 0) {
+                    postIds.add(postId);
+                    batchArgs.add(new Object[]{delta, postId});
+                } else {
+                    idlePostIds.add(postId);
+                }
+            });
+
+            // 上一轮之后没有新浏览的帖子移除计数器，移除时再次确认总和为0
+            for (Long postId : idlePostIds) {
+                pending.computeIfPresent(postId, (id, adder) -> adder.sum() == 0 ? null : adder);
+            }
+
+            if (batchArgs.isEmpty()) {
+                return;
+            }
+
+            try {
+                jdbcTemplate.batchUpdate(FLUSH_SQL, batchArgs);
+                long flushed = batchArgs.stream().mapToLong(args -> (Long) args[0]).sum();
+                flushedTotal.addAndGet(flushed);
+                lastFlushTime = LocalDateTime.now();
+                logger.debug("浏览量已批量写入，帖子数: {}, 浏览数: {}", postIds.size(), flushed);
+            } catch (Exception e) {
+                // 写入失败时把增量放回缓冲，下一轮重试
+                logger.error("浏览量批量写入失败，将在下一轮重试: {}", e.getMessage());
+                for (Object[] args : batchArgs) {
+                    pending.computeIfAbsent((Long) args[1], id -> new LongAdder()).add((Long) args[0]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 应用关闭前在限定时间内写入剩余增量
+     */
+    @PreDestroy
+    public void flushOnShutdown() {
+        CompletableFuture<Void> future = CompletableFuture.runAsync(this::flush);
+        try {
+            future.get(shutdownFlushTimeoutMs, TimeUnit.MILLISECONDS);
+            logger.info("关闭前浏览量已写入数据库");
+        } catch (TimeoutException e) {
+            logger.warn("关闭前写入浏览量超时（{} ms），未写入的浏览数: {}", shutdownFlushTimeoutMs, getPendingDeltaCount());
+        } catch (Exception e) {
+            logger.error("关闭前写入浏览量失败: {}", e.getMessage());
+        }
+    }
+}
@@ -1,28 +1,36 @@
 package com.jinshuxqm.community.service.impl;
 
 import com.jinshuxqm.community.dto.CommentDTO;
+import com.jinshuxqm.community.dto.CursorPageDTO;
 import com.jinshuxqm.community.dto.PagedResponseDTO;
 import com.jinshuxqm.community.exception.ResourceNotFoundException;
 import com.jinshuxqm.community.exception.UnauthorizedException;
 import com.jinshuxqm.community.model.Comment;
 import com.jinshuxqm.community.model.Post;
 import com.jinshuxqm.community.model.User;
+import com.jinshuxqm.community.repository.CommentLikeRepository;
 import com.jinshuxqm.community.repository.CommentRepository;
 import com.jinshuxqm.community.repository.PostRepository;
 import com.jinshuxqm.community.repository.UserRepository;
 import com.jinshuxqm.community.service.CommentService;
+import com.jinshuxqm.community.service.CommentThreadCache;
+import com.jinshuxqm.community.service.CommentThreadLoader;
+import com.jinshuxqm.community.service.HotCommentRankingService;
+import com.jinshuxqm.community.service.HotPostRankingService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -39,43 +47,36 @@ public class CommentServiceImpl implements CommentService {
     @Autowired
     private UserRepository userRepository;
     
+    @Autowired
+    private HotPostRankingService hotPostRankingService;
+    
+    @Autowired
+    private CommentThreadLoader commentThreadLoader;
+    
+    @Autowired
+    private CommentLikeRepository commentLikeRepository;
+    
+    @Autowired
+    private CommentThreadCache commentThreadCache;
+    
+    @Autowired
+    private HotCommentRankingService hotCommentRankingService;
+    
     /**
      * 获取帖子的评论（分页，带回复）
      */
     @Override
     public PagedResponseDTO<CommentDTO> getCommentsByPostId(Long postId, int page, int size, Authentication authentication) {
-        // 从Authentication中提取User
-        User currentUser = null;
-        if (authentication != null) {
-            String username = authentication.getName();
-            currentUser = userRepository.findByUsername(username).orElse(null);
-        }
-        
-        Pageable pageable = PageRequest.of(page, size);
-        
         // 验证帖子是否存在
         if (!postRepository.existsById(postId)) {
             throw new ResourceNotFoundException("Post", "id", postId);
         }
         
-        // 获取一级评论
-        Page<Comment> commentPage = commentRepository.findByPostIdAndParentIsNullOrderByCreatedAtDesc(postId, pageable);
-        
-        List<CommentDTO> commentDTOs = new ArrayList<>();
-        
-        for (Comment comment : commentPage.getContent()) {
-            CommentDTO dto = CommentDTO.fromEntity(comment, true); // 带回复
-            
-            // 设置当前用户是否点赞
-            if (currentUser != null) {
-                dto.setLikedByCurrentUser(comment.isLikedByUser(currentUser));
-            }
-            
-            commentDTOs.add(dto);
-        }
+        Page<CommentDTO> commentPage = commentThreadLoader.loadRoots(postId, PageRequest.of(page, size));
+        applyLikedFlags(commentPage.getContent(), authentication);
         
         return new PagedResponseDTO<>(
-            commentDTOs,
+            commentPage.getContent(),
             commentPage.getNumber(),
             commentPage.getSize(),
             commentPage.getTotalElements(),
@@ -84,6 +85,63 @@ public class CommentServiceImpl implements CommentService {
         );
     }
     
+    /**
+     * 获取帖子的一页评论楼层：一级评论带回复预览和当前用户的点赞状态。
+     * 首页优先从共享缓存读取，点赞状态在读取后按当前用户设置
+     */
+    @Override
+    public List<CommentDTO> getCommentThread(Long postId, int page, int size, Authentication authentication) {
+        List<CommentDTO> comments = null;
+        if (page == 0) {
+            comments = commentThreadCache.getFirstPage(postId, size);
+        }
+        if (comments == null) {
+            comments = commentThreadLoader.loadRoots(postId, PageRequest.of(page, size)).getContent();
+        }
+        applyLikedFlags(comments, authentication);
+        return comments;
+    }
+    
+    /**
+     * 按热度获取帖子的一页一级评论，带回复预览和当前用户的点赞状态
+     */
+    @Override
+    public List<CommentDTO> getTopCommentThread(Long postId, int page, int size, Authentication authentication) {
+        List<Long> rootIds = hotCommentRankingService.getTopCommentIds(postId, page, size);
+        List<CommentDTO> comments = commentThreadLoader.loadRootsByIds(rootIds);
+        applyLikedFlags(comments, authentication);
+        return comments;
+    }
+    
+    /**
+     * 按游标分页获取评论的回复
+     */
+    @Override
+    public CursorPageDTO<CommentDTO> getReplies(Long commentId, Long afterId, int size, Authentication authentication) {
+        if (!commentRepository.existsById(commentId)) {
+            throw new ResourceNotFoundException("Comment", "id", commentId);
+        }
+        CursorPageDTO<CommentDTO> replies = commentThreadLoader.loadReplies(commentId, afterId, size);
+        applyLikedFlags(replies.getContent(), authentication);
+        return replies;
+    }
+    
+    // 一次查询设置当前用户对这些评论及其回复的点赞状态，未登录时不设置
+    private void applyLikedFlags(List<CommentDTO> comments, Authentication authentication) {
+        if (authentication == null || comments.isEmpty()) {
+            return;
+        }
+        Long userId = userRepository.findIdByUsername(authentication.getName()).orElse(null);
+        if (userId == null) {
+            return;
+        }
+        Set<Long> likedIds = commentLikeRepository.findLikedCommentIds(userId, CommentThreadLoader.collectIds(comments))
+                .stream()
+                .map(Number::longValue)
+                .collect(Collectors.toSet());
+        CommentThreadLoader.applyLikedFlags(comments, likedIds);
+    }
+    
     /**
      * 创建评论
      */
@@ -125,15 +183,21 @@ public class CommentServiceImpl implements CommentService {
             
             // 保存评论
             comment = commentRepository.save(comment);
+            boolean parentIsRoot = comment.getParent() != null && comment.getParent().getParent() == null;
             
-            // 【新增】更新帖子的评论统计数
-            if (post.getStats() != null) {
-                post.getStats().incrementCommentCount();
-                postRepository.save(post);
-                System.out.println("已更新帖子 " + postId + " 的评论数为: " + post.getStats().getCommentCount());
-            } else {
-                System.err.println("警告: 帖子 " + postId + " 的Stats为null，无法更新评论数");
-            }
+            // 在同一事务中原子地增加帖子评论数，不再保存整个帖子
+            postRepository.adjustCommentCount(postId, 1);
+            Comment created = comment;
+            // 内存中的计数和缓存在提交后更新，事务回滚时保持不变
+            afterCommit(() -> {
+                hotPostRankingService.onCommentChanged(postId, 1);
+                commentThreadCache.evict(postId);
+                if (created.getParent() != null) {
+                    hotCommentRankingService.onReplyChanged(postId, created.getParent().getId(), parentIsRoot, 1);
+                } else {
+                    hotCommentRankingService.onRootCreated(postId, created.getId(), created.getCreatedAt());
+                }
+            });
             
             // 将实体转换为DTO并返回
             return convertToDTO(comment, author);
@@ -168,62 +232,80 @@ public class CommentServiceImpl implements CommentService {
             throw new UnauthorizedException("You don't have permission to delete this comment");
         }
         
-        // 软删除评论
-        comment.setIsDeleted(true);
-        commentRepository.save(comment);
+        // 软删除评论，重复删除时不再减少评论数
+        if (commentRepository.softDelete(commentId) == 0) {
+            return;
+        }
         
-        // 更新帖子评论数
-        Post post = comment.getPost();
-        long commentCount = commentRepository.countByPostIdAndIsDeletedFalse(post.getId());
-        post.setComments((int) commentCount);
-        postRepository.save(post);
+        // 原子地减少帖子评论数，不再重新统计
+        Long postId = comment.getPost().getId();
+        postRepository.adjustCommentCount(postId, -1);
+        Long parentId = comment.getParent() != null ? comment.getParent().getId() : null;
+        boolean parentIsRoot = parentId != null && comment.getParent().getParent() == null;
+        afterCommit(() -> {
+            hotPostRankingService.onCommentChanged(postId, -1);
+            commentThreadCache.evict(postId);
+            if (parentId != null) {
+                hotCommentRankingService.onReplyChanged(postId, parentId, parentIsRoot, -1);
+            } else {
+                hotCommentRankingService.onRootDeleted(postId, commentId);
+            }
+        });
     }
     
     /**
-     * 点赞评论
+     * 点赞评论：点赞关系按主键幂等插入，只有实际插入时才原子地增加点赞数
      */
     @Override
     @Transactional
     public void likeComment(Long commentId, Authentication authentication) {
-        // 提取用户
-        User currentUser = null;
-        if (authentication != null) {
-            currentUser = userRepository.findByUsername(authentication.getName())
-                .orElseThrow(() -> new UnauthorizedException("用户不存在"));
-        } else {
+        if (authentication == null) {
             throw new UnauthorizedException("需要登录才能点赞评论");
         }
+        Long userId = userRepository.findIdByUsername(authentication.getName())
+            .orElseThrow(() -> new UnauthorizedException("用户不存在"));
         
-        Comment comment = commentRepository.findById(commentId)
-            .orElseThrow(() -> new ResourceNotFoundException("Comment", "id", commentId));
+        List<Object[]> target = commentRepository.findPostIdAndParentIdById(commentId);
+        if (target.isEmpty()) {
+            throw new ResourceNotFoundException("Comment", "id", commentId);
+        }
+        Long postId = (Long) target.get(0)[0];
+        boolean root = target.get(0)[1] == null;
         
-        if (!comment.isLikedByUser(currentUser)) {
-            comment.addLike(currentUser);
-            commentRepository.save(comment);
+        if (commentLikeRepository.insertIgnore(commentId, userId) > 0) {
+            commentRepository.adjustLikes(commentId, 1);
+            afterCommit(() -> {
+                commentThreadCache.evict(postId);
+                hotCommentRankingService.onLikeChanged(postId, commentId, root, 1);
+            });
         }
     }
     
     /**
-     * 取消点赞评论
+     * 取消点赞评论：只有实际删除了点赞关系时才原子地减少点赞数
      */
     @Override
     @Transactional
     public void unlikeComment(Long commentId, Authentication authentication) {
-        // 提取用户
-        User currentUser = null;
-        if (authentication != null) {
-            currentUser = userRepository.findByUsername(authentication.getName())
-                .orElseThrow(() -> new UnauthorizedException("用户不存在"));
-        } else {
+        if (authentication == null) {
             throw new UnauthorizedException("需要登录才能取消点赞评论");
         }
+        Long userId = userRepository.findIdByUsername(authentication.getName())
+            .orElseThrow(() -> new UnauthorizedException("用户不存在"));
         
-        Comment comment = commentRepository.findById(commentId)
-            .orElseThrow(() -> new ResourceNotFoundException("Comment", "id", commentId));
+        List<Object[]> target = commentRepository.findPostIdAndParentIdById(commentId);
+        if (target.isEmpty()) {
+            throw new ResourceNotFoundException("Comment", "id", commentId);
+        }
+        Long postId = (Long) target.get(0)[0];
+        boolean root = target.get(0)[1] == null;
         
-        if (comment.isLikedByUser(currentUser)) {
-            comment.removeLike(currentUser);
-            commentRepository.save(comment);
+        if (commentLikeRepository.deleteLike(commentId, userId) > 0) {
+            commentRepository.adjustLikes(commentId, -1);
+            afterCommit(() -> {
+                commentThreadCache.evict(postId);
+                hotCommentRankingService.onLikeChanged(postId, commentId, root, -1);
+            });
         }
     }
 
@@ -241,7 +323,8 @@ public class CommentServiceImpl implements CommentService {
         
         // 设置用户是否点赞
         if (currentUser != null) {
-            dto.setLikedByCurrentUser(comment.isLikedByUser(currentUser));
+            dto.setLikedByCurrentUser(!commentLikeRepository.findLikedCommentIds(
+                currentUser.getId(), List.of(comment.getId())).isEmpty());
         }
         
         if (comment.getParent() != null) {
@@ -286,4 +369,18 @@ public class CommentServiceImpl implements CommentService {
             return new ArrayList<>(); // 返回空列表而不是抛出异常
         }
     }
-} 
\ No newline at end of file
+    
+    // 辅助方法：事务提交后执行，没有事务时立即执行
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
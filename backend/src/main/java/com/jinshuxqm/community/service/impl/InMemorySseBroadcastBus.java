@@ -0,0 +1,35 @@
+package com.jinshuxqm.community.service.impl;
+
+import com.jinshuxqm.community.dto.SseEnvelope;
+import com.jinshuxqm.community.service.SseBroadcastBus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 进程内的广播总线，适用于单节点部署和测试
+ */
+public class InMemorySseBroadcastBus implements SseBroadcastBus {
+    private static final Logger logger = LoggerFactory.getLogger(InMemorySseBroadcastBus.class);
+
+    private final List<Consumer<SseEnvelope>> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(SseEnvelope envelope) {
+        for (Consumer<SseEnvelope> listener : listeners) {
+            try {
+                listener.accept(envelope);
+            } catch (Exception e) {
+                logger.error("Error dispatching SSE event {} to user {}: {}", envelope.getEvent(), envelope.getUserId(), e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<SseEnvelope> listener) {
+        listeners.add(listener);
+    }
+}
@@ -12,7 +12,13 @@ import com.jinshuxqm.community.repository.PostFavoriteRepository;
 import com.jinshuxqm.community.repository.PostLikeRepository;
 import com.jinshuxqm.community.repository.PostRepository;
 import com.jinshuxqm.community.repository.UserRepository;
+import com.jinshuxqm.community.service.HotCommentRankingService;
+import com.jinshuxqm.community.service.HotPostRankingService;
+import com.jinshuxqm.community.service.PostSearchIndex;
 import com.jinshuxqm.community.service.PostService;
+import com.jinshuxqm.community.service.ReactionEventPipeline;
+import com.jinshuxqm.community.service.UserReactionCache;
+import com.jinshuxqm.community.service.ViewCountBuffer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -21,33 +27,35 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.transaction.annotation.Propagation;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
 
 import javax.persistence.EntityNotFoundException;
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import com.jinshuxqm.community.dto.CursorPageDTO;
 import com.jinshuxqm.community.dto.PagedResponseDTO;
+import com.jinshuxqm.community.dto.PostCursor;
 import com.jinshuxqm.community.dto.PostDTO;
-import java.util.concurrent.CompletableFuture;
+import com.jinshuxqm.community.dto.PostReactionFlags;
 import java.util.ArrayList;
 import org.springframework.data.domain.PageImpl;
-import java.util.Comparator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 @Service
 public class PostServiceImpl implements PostService {
-    // 使用并发HashMap存储每个帖子的操作锁
-    private final ConcurrentHashMap<String, Lock> postLocks = new ConcurrentHashMap<>();
     
     @Autowired
     private PostRepository postRepository;
@@ -61,16 +69,34 @@ public class PostServiceImpl implements PostService {
     @Autowired
     private PostFavoriteRepository postFavoriteRepository;
     
+    @Autowired
+    private HotPostRankingService hotPostRankingService;
+    
+    @Autowired
+    private HotCommentRankingService hotCommentRankingService;
+    
+    @Autowired
+    private ViewCountBuffer viewCountBuffer;
+    
+    @Autowired
+    private UserReactionCache userReactionCache;
+    
+    @Autowired
+    private ReactionEventPipeline reactionEventPipeline;
+    
+    @Autowired
+    private PostSearchIndex postSearchIndex;
+    
+    @Autowired
+    private CacheManager cacheManager;
+    
     @Autowired(required = false)
     private com.jinshuxqm.community.agent.service.AgentManager agentManager;
     
     private static final Logger logger = LoggerFactory.getLogger(PostServiceImpl.class);
-    
-    // 获取指定帖子和用户的操作锁
-    private Lock getPostUserLock(Long postId, String username) {
-        String key = postId + "-" + username; // 为每个帖子-用户组合创建唯一键
-        return postLocks.computeIfAbsent(key, k -> new ReentrantLock());
-    }
+
+    // 未登录请求经过AnonymousAuthenticationFilter后的用户名
+    private static final String ANONYMOUS_USERNAME = "anonymousUser";
     
     @Override
     public PostResponse createPost(PostRequest postRequest, String username) {
@@ -111,6 +137,10 @@ public class PostServiceImpl implements PostService {
             Post savedPost = postRepository.save(post);
             logger.info("  [DEBUG] Post successfully saved with ID: {}", savedPost.getId());
             
+            // 加入热榜索引和检索索引
+            hotPostRankingService.onPostCreated(savedPost);
+            postSearchIndex.index(savedPost);
+            
             // 🎉 新功能：所有Agent自动点赞新帖子
             triggerAgentAutoLikes(savedPost);
             
@@ -125,30 +155,19 @@ public class PostServiceImpl implements PostService {
     }
     
     @Override
-    public Page<PostResponse> getAllPosts(Pageable pageable) {
-        return postRepository.findAll(pageable)
-                .map(post -> convertToDto(post, null));
+    public Page<PostResponse> getAllPosts(Pageable pageable, String username) {
+        return toResponsePage(postRepository.findAll(pageable), username);
     }
     
     @Override
-    @Cacheable(value = "posts", key = "#id")
     public PostResponse getPostById(Long id) {
         try {
-            // 先获取帖子数据
-            Post post = postRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Post", "id", id));
+            // 正文和作者信息来自缓存，计数每次从内存实时读取后合并
+            PostResponse response = copyPostBody(getCachedPostBody(id));
+            applyLiveCounters(response);
             
-            // 转换为DTO
-            PostResponse response = convertToDto(post, null);
-            
-            // 异步增加浏览次数，不影响主流程
-            CompletableFuture.runAsync(() -> {
-                try {
-                    incrementViewCount(id);
-                } catch (Exception e) {
-                    System.err.println("异步增加浏览次数失败: " + e.getMessage());
-                }
-            });
+            // 浏览次数先计入内存缓冲，由定时任务批量写入数据库
+            incrementViewCount(id);
             
             return response;
         } catch (ResourceNotFoundException ex) {
@@ -160,8 +179,63 @@ public class PostServiceImpl implements PostService {
         }
     }
     
+    // 获取缓存的帖子正文（不含计数和当前用户状态），缓存未命中时从数据库加载
+    private PostResponse getCachedPostBody(Long id) {
+        Cache cache = cacheManager.getCache("posts");
+        try {
+            return cache.get(id, () -> loadPostBody(id));
+        } catch (Cache.ValueRetrievalException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+    
+    private PostResponse loadPostBody(Long id) {
+        List<Post> posts = postRepository.findAllWithDetailsByIdIn(List.of(id));
+        if (posts.isEmpty()) {
+            throw new ResourceNotFoundException("Post", "id", id);
+        }
+        
+        PostResponse body = convertToDto(posts.get(0), PostReactionFlags.none());
+        // 标签复制为普通集合，避免缓存中持有Hibernate的懒加载集合
+        body.setTags(body.getTags() != null ? new HashSet<>(body.getTags()) : null);
+        return body;
+    }
+    
+    // 复制缓存中的正文，缓存对象在请求之间共享，不能直接修改
+    private PostResponse copyPostBody(PostResponse body) {
+        PostResponse copy = new PostResponse();
+        copy.setId(body.getId());
+        copy.setTitle(body.getTitle());
+        copy.setContent(body.getContent());
+        copy.setTab(body.getTab());
+        copy.setTags(body.getTags() != null ? new HashSet<>(body.getTags()) : null);
+        copy.setAuthor(body.getAuthor());
+        copy.setCreatedAt(body.getCreatedAt());
+        copy.setUpdatedAt(body.getUpdatedAt());
+        copy.setLikes(body.getLikes());
+        copy.setComments(body.getComments());
+        copy.setFavorites(body.getFavorites());
+        copy.setViews(body.getViews());
+        return copy;
+    }
+    
+    // 用内存中的实时计数覆盖缓存时的计数
+    private void applyLiveCounters(PostResponse response) {
+        HotPostRankingService.PostCounters counters = hotPostRankingService.getCounters(response.getId());
+        if (counters == null) {
+            return;
+        }
+        response.setViews(counters.getViews());
+        response.setLikes(counters.getLikes());
+        response.setFavorites(counters.getFavorites());
+        response.setComments(counters.getComments());
+    }
+    
     @Override
-    public Page<PostResponse> getPostsByTab(String tab, Pageable pageable) {
+    public Page<PostResponse> getPostsByTab(String tab, Pageable pageable, String username) {
         System.out.println("=== getPostsByTab调试信息 ===");
         System.out.println("查询tab: '" + tab + "'");
         System.out.println("tab长度: " + tab.length());
@@ -179,10 +253,37 @@ public class PostServiceImpl implements PostService {
             System.out.println("  Tab字节: " + java.util.Arrays.toString(firstPost.getTab().getBytes()));
         }
         
-        return posts.map(post -> convertToDto(post, null));
+        return toResponsePage(posts, username);
     }
     
     @Override
+    public CursorPageDTO<PostResponse> getPostsByCursor(String tab, String cursor, int size, boolean withTotal, String username) {
+        PostCursor after = PostCursor.decode(cursor);
+        size = Math.max(size, 1);
+        // 多取一条用于判断是否还有下一页
+        Pageable limit = PageRequest.of(0, size + 1);
+        List<Post> posts = tab != null
+                ? postRepository.findPageByTabAfter(tab, after.getCreatedAt(), after.getId(), limit)
+                : postRepository.findPageAfter(after.getCreatedAt(), after.getId(), limit);
+        
+        Long total = null;
+        if (withTotal) {
+            total = tab != null ? postRepository.countByTab(tab) : postRepository.count();
+        }
+        return toCursorPage(posts, size, total, page -> convertToDtos(page, resolveUserId(username)));
+    }
+    
+    // 将多取一条的查询结果转换为游标分页
+    private <T> CursorPageDTO<T> toCursorPage(List<Post> posts, int size, Long total,
+                                              Function<List<Post>, List<T>> converter) {
+        boolean hasNext = posts.size() > size;
+        List<Post> page = hasNext ? posts.subList(0, size) : posts;
+        String nextCursor = hasNext ? PostCursor.of(page.get(page.size() - 1)).encode() : null;
+        return new CursorPageDTO<>(converter.apply(page), nextCursor, hasNext, size, total);
+    }
+    
+    @Override
+    @CacheEvict(value = "posts", key = "#id")
     public PostResponse updatePost(Long id, PostRequest postRequest, String username) {
         Post post = postRepository.findById(id)
                 .orElseThrow(() -> new EntityNotFoundException("帖子不存在: " + id));
@@ -204,11 +305,13 @@ public class PostServiceImpl implements PostService {
         post.setUpdatedAt(LocalDateTime.now());
         
         Post updatedPost = postRepository.save(post);
+        postSearchIndex.index(updatedPost);
         
         return convertToDto(updatedPost, username);
     }
     
     @Override
+    @CacheEvict(value = {"posts", "comments"}, key = "#id")
     public void deletePost(Long id, String username) {
         Post post = postRepository.findById(id)
                 .orElseThrow(() -> new EntityNotFoundException("帖子不存在: " + id));
@@ -219,154 +322,58 @@ public class PostServiceImpl implements PostService {
         }
         
         postRepository.delete(post);
+        hotPostRankingService.onPostDeleted(id);
+        hotCommentRankingService.onPostDeleted(id);
+        viewCountBuffer.discard(id);
+        userReactionCache.onPostDeleted(id);
+        postSearchIndex.remove(id);
     }
     
     @Override
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void incrementViewCount(Long postId) {
-        try {
-            // 使用乐观锁或悲观锁确保并发安全
-            postRepository.incrementViewCount(postId);
-        } catch (Exception e) {
-            // 仅记录错误，不影响主流程
-            System.err.println("增加浏览次数失败: " + e.getMessage());
-        }
+        viewCountBuffer.record(postId);
+        hotPostRankingService.onViewed(postId, 1);
     }
     
-    // 修改点赞方法，添加用户关联
+    // 点赞：事件写入发件箱并进入管道后立即返回，由后台批量写入
     @Override
-    @Transactional
     public void likePost(Long id, String username) {
-        Lock lock = getPostUserLock(id, username);
-        lock.lock();
-        
-        try {
-            Post post = postRepository.findById(id)
-                    .orElseThrow(() -> new EntityNotFoundException("帖子不存在: " + id));
-            
-            User user = userRepository.findByUsername(username)
-                    .orElseThrow(() -> new EntityNotFoundException("用户不存在: " + username));
-            
-            // 检查用户是否已经点赞
-            Optional<PostLike> existingLike = postLikeRepository.findByUserAndPost(user, post);
-            
-            if (existingLike.isPresent()) {
-                // 用户已经点赞，不做处理
-                return;
-            }
-            
-            // 创建点赞记录
-            PostLike like = new PostLike(user, post);
-            postLikeRepository.save(like);
-            
-            // 更新统计数据
-            if (post.getStats() != null) {
-                post.getStats().incrementLikeCount();
-                postRepository.save(post);
-            }
-        } finally {
-            lock.unlock();
-        }
+        Long userId = requireReactionTarget(id, username);
+        long eventId = reactionEventPipeline.submit(userId, id, ReactionEventPipeline.ReactionType.LIKE, true);
+        userReactionCache.onLiked(userId, id, eventId);
     }
     
-    // 修改取消点赞方法，删除用户关联
+    // 取消点赞
     @Override
-    @Transactional
     public void unlikePost(Long id, String username) {
-        Lock lock = getPostUserLock(id, username);
-        lock.lock();
-        
-        try {
-            Post post = postRepository.findById(id)
-                    .orElseThrow(() -> new EntityNotFoundException("帖子不存在: " + id));
-            
-            User user = userRepository.findByUsername(username)
-                    .orElseThrow(() -> new EntityNotFoundException("用户不存在: " + username));
-            
-            // 检查用户是否已经点赞
-            Optional<PostLike> existingLike = postLikeRepository.findByUserAndPost(user, post);
-            
-            if (existingLike.isPresent()) {
-                // 删除点赞记录
-                postLikeRepository.deleteByUserAndPost(user, post);
-                
-                // 更新统计数据
-                if (post.getStats() != null) {
-                    post.getStats().decrementLikeCount();
-                    postRepository.save(post);
-                }
-            }
-        } finally {
-            lock.unlock();
-        }
+        Long userId = requireReactionTarget(id, username);
+        long eventId = reactionEventPipeline.submit(userId, id, ReactionEventPipeline.ReactionType.LIKE, false);
+        userReactionCache.onUnliked(userId, id, eventId);
     }
     
-    // 修改收藏方法，添加用户关联
+    // 收藏：事件写入发件箱并进入管道后立即返回，由后台批量写入
     @Override
-    @Transactional
     public void favoritePost(Long id, String username) {
-        Lock lock = getPostUserLock(id, username);
-        lock.lock();
-        
-        try {
-            Post post = postRepository.findById(id)
-                    .orElseThrow(() -> new EntityNotFoundException("帖子不存在: " + id));
-            
-            User user = userRepository.findByUsername(username)
-                    .orElseThrow(() -> new EntityNotFoundException("用户不存在: " + username));
-            
-            // 检查用户是否已经收藏
-            Optional<PostFavorite> existingFavorite = postFavoriteRepository.findByUserAndPost(user, post);
-            
-            if (existingFavorite.isPresent()) {
-                // 用户已经收藏，不做处理
-                return;
-            }
-            
-            // 创建收藏记录
-            PostFavorite favorite = new PostFavorite(user, post);
-            postFavoriteRepository.save(favorite);
-            
-            // 更新统计数据
-            if (post.getStats() != null) {
-                post.getStats().incrementFavoriteCount();
-                postRepository.save(post);
-            }
-        } finally {
-            lock.unlock();
-        }
+        Long userId = requireReactionTarget(id, username);
+        long eventId = reactionEventPipeline.submit(userId, id, ReactionEventPipeline.ReactionType.FAVORITE, true);
+        userReactionCache.onFavorited(userId, id, eventId);
     }
     
-    // 修改取消收藏方法，删除用户关联
+    // 取消收藏
     @Override
-    @Transactional
     public void unfavoritePost(Long id, String username) {
-        Lock lock = getPostUserLock(id, username);
-        lock.lock();
-        
-        try {
-            Post post = postRepository.findById(id)
-                    .orElseThrow(() -> new EntityNotFoundException("帖子不存在: " + id));
-            
-            User user = userRepository.findByUsername(username)
-                    .orElseThrow(() -> new EntityNotFoundException("用户不存在: " + username));
-            
-            // 检查用户是否已经收藏
-            Optional<PostFavorite> existingFavorite = postFavoriteRepository.findByUserAndPost(user, post);
-            
-            if (existingFavorite.isPresent()) {
-                // 删除收藏记录
-                postFavoriteRepository.deleteByUserAndPost(user, post);
-                
-                // 更新统计数据
-                if (post.getStats() != null) {
-                    post.getStats().decrementFavoriteCount();
-                    postRepository.save(post);
-                }
-            }
-        } finally {
-            lock.unlock();
+        Long userId = requireReactionTarget(id, username);
+        long eventId = reactionEventPipeline.submit(userId, id, ReactionEventPipeline.ReactionType.FAVORITE, false);
+        userReactionCache.onUnfavorited(userId, id, eventId);
+    }
+    
+    // 校验帖子存在并返回用户ID
+    private Long requireReactionTarget(Long postId, String username) {
+        if (!postRepository.existsById(postId)) {
+            throw new EntityNotFoundException("帖子不存在: " + postId);
         }
+        return userRepository.findIdByUsername(username)
+                .orElseThrow(() -> new EntityNotFoundException("用户不存在: " + username));
     }
     
     // 实现新增方法：检查用户是否已点赞帖子
@@ -376,13 +383,10 @@ public class PostServiceImpl implements PostService {
             return false;
         }
         
-        Post post = postRepository.findById(postId)
-                .orElseThrow(() -> new EntityNotFoundException("帖子不存在: " + postId));
-        
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new EntityNotFoundException("用户不存在: " + username));
         
-        return postLikeRepository.findByUserAndPost(user, post).isPresent();
+        return getReactionFlags(List.of(postId), user.getId()).isLiked(postId);
     }
     
     // 实现新增方法：检查用户是否已收藏帖子
@@ -392,13 +396,28 @@ public class PostServiceImpl implements PostService {
             return false;
         }
         
-        Post post = postRepository.findById(postId)
-                .orElseThrow(() -> new EntityNotFoundException("帖子不存在: " + postId));
-        
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new EntityNotFoundException("用户不存在: " + username));
         
-        return postFavoriteRepository.findByUserAndPost(user, post).isPresent();
+        return getReactionFlags(List.of(postId), user.getId()).isFavorited(postId);
+    }
+    
+    @Override
+    public PostReactionFlags getReactionFlags(Collection<Long> postIds, Long userId) {
+        if (userId == null || postIds == null || postIds.isEmpty()) {
+            return PostReactionFlags.none();
+        }
+        
+        // 优先从用户的内存集合中判断，无需访问数据库
+        UserReactionCache.UserReactions reactions = userReactionCache.get(userId);
+        if (reactions != null) {
+            return new PostReactionFlags(reactions.likedAmong(postIds), reactions.favoritedAmong(postIds));
+        }
+        
+        // 集合过大未缓存时，两次IN查询得到整页帖子的点赞和收藏状态
+        Set<Long> likedPostIds = new HashSet<>(postLikeRepository.findLikedPostIds(userId, postIds));
+        Set<Long> favoritedPostIds = new HashSet<>(postFavoriteRepository.findFavoritedPostIds(userId, postIds));
+        return new PostReactionFlags(likedPostIds, favoritedPostIds);
     }
     
     // 实现新增方法：获取用户点赞的所有帖子
@@ -407,11 +426,11 @@ public class PostServiceImpl implements PostService {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new EntityNotFoundException("用户不存在: " + username));
         
-        List<PostLike> likes = postLikeRepository.findByUser(user);
-        
-        return likes.stream()
-                .map(like -> convertToDto(like.getPost(), username))
+        List<Post> posts = postLikeRepository.findByUser(user).stream()
+                .map(PostLike::getPost)
                 .collect(Collectors.toList());
+        
+        return convertToDtos(posts, user.getId());
     }
     
     // 实现新增方法：获取用户收藏的所有帖子
@@ -420,15 +439,44 @@ public class PostServiceImpl implements PostService {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new EntityNotFoundException("用户不存在: " + username));
         
-        List<PostFavorite> favorites = postFavoriteRepository.findByUser(user);
+        List<Post> posts = postFavoriteRepository.findByUser(user).stream()
+                .map(PostFavorite::getPost)
+                .collect(Collectors.toList());
         
-        return favorites.stream()
-                .map(favorite -> convertToDto(favorite.getPost(), username))
+        return convertToDtos(posts, user.getId());
+    }
+    
+    // 获取当前用户ID，未登录或用户不存在时返回null
+    // 只查询用户ID；未登录（包括Spring Security的匿名用户）时不查询数据库
+    private Long resolveUserId(String username) {
+        if (username == null || ANONYMOUS_USERNAME.equals(username)) {
+            return null;
+        }
+        return userRepository.findIdByUsername(username).orElse(null);
+    }
+    
+    // 将一页帖子实体转换为响应分页，点赞和收藏状态批量查询
+    private Page<PostResponse> toResponsePage(Page<Post> posts, String username) {
+        List<PostResponse> content = convertToDtos(posts.getContent(), resolveUserId(username));
+        return new PageImpl<>(content, posts.getPageable(), posts.getTotalElements());
+    }
+    
+    // 批量转换帖子，整批只查询一次点赞和收藏状态
+    private List<PostResponse> convertToDtos(List<Post> posts, Long userId) {
+        List<Long> postIds = posts.stream().map(Post::getId).collect(Collectors.toList());
+        PostReactionFlags flags = getReactionFlags(postIds, userId);
+        return posts.stream()
+                .map(post -> convertToDto(post, flags))
                 .collect(Collectors.toList());
     }
     
-    // 修改convertToDto方法，添加用户的点赞和收藏状态
+    // 单个帖子转换，附带指定用户的点赞和收藏状态
     private PostResponse convertToDto(Post post, String username) {
+        return convertToDtos(List.of(post), resolveUserId(username)).get(0);
+    }
+    
+    // 转换帖子为响应DTO，点赞和收藏状态由调用方批量查询后传入
+    private PostResponse convertToDto(Post post, PostReactionFlags flags) {
         PostResponse dto = new PostResponse();
         dto.setId(post.getId());
         dto.setTitle(post.getTitle());
@@ -457,13 +505,8 @@ public class PostServiceImpl implements PostService {
         }
         
         // 设置当前用户的点赞和收藏状态
-        if (username != null) {
-            dto.setLikedByCurrentUser(hasUserLikedPost(post.getId(), username));
-            dto.setFavoritedByCurrentUser(hasUserFavoritedPost(post.getId(), username));
-        } else {
-            dto.setLikedByCurrentUser(false);
-            dto.setFavoritedByCurrentUser(false);
-        }
+        dto.setLikedByCurrentUser(flags.isLiked(post.getId()));
+        dto.setFavoritedByCurrentUser(flags.isFavorited(post.getId()));
         
         return dto;
     }
@@ -474,10 +517,11 @@ public class PostServiceImpl implements PostService {
     }
 
     @Override
-    public PagedResponseDTO<PostDTO> getPostsByUserId(Long userId, int page, int size) {
+    public PagedResponseDTO<PostDTO> getPostsByUserId(Long userId, int page, int size, String viewerUsername) {
         // 验证用户是否存在
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("User", "id", userId));
+        if (!userRepository.existsById(userId)) {
+            throw new ResourceNotFoundException("User", "id", userId);
+        }
         
         // 创建分页请求
         Pageable pageable = PageRequest.of(page, size, Sort.by("createdAt").descending());
@@ -486,9 +530,7 @@ public class PostServiceImpl implements PostService {
         Page<Post> postPage = postRepository.findByAuthorId(userId, pageable);
         
         // 转换为 PostDTO 列表
-        List<PostDTO> content = postPage.getContent().stream()
-                .map(post -> PostDTO.fromEntity(post, null))
-                .collect(Collectors.toList());
+        List<PostDTO> content = convertToPostDtos(postPage.getContent(), viewerUsername);
         
         // 返回分页响应
         return new PagedResponseDTO<>(
@@ -502,10 +544,26 @@ public class PostServiceImpl implements PostService {
     }
 
     @Override
-    public PagedResponseDTO<PostDTO> getLikedPostsByUserId(Long userId, int page, int size) {
+    public CursorPageDTO<PostDTO> getPostsByUserIdCursor(Long userId, String cursor, int size, boolean withTotal, String viewerUsername) {
         // 验证用户是否存在
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("User", "id", userId));
+        if (!userRepository.existsById(userId)) {
+            throw new ResourceNotFoundException("User", "id", userId);
+        }
+        
+        PostCursor after = PostCursor.decode(cursor);
+        size = Math.max(size, 1);
+        List<Post> posts = postRepository.findPageByAuthorIdAfter(
+                userId, after.getCreatedAt(), after.getId(), PageRequest.of(0, size + 1));
+        Long total = withTotal ? postRepository.countByAuthorId(userId) : null;
+        return toCursorPage(posts, size, total, page -> convertToPostDtos(page, viewerUsername));
+    }
+
+    @Override
+    public PagedResponseDTO<PostDTO> getLikedPostsByUserId(Long userId, int page, int size, String viewerUsername) {
+        // 验证用户是否存在
+        if (!userRepository.existsById(userId)) {
+            throw new ResourceNotFoundException("User", "id", userId);
+        }
         
         // 创建分页请求
         Pageable pageable = PageRequest.of(page, size, Sort.by("createdAt").descending());
@@ -514,9 +572,7 @@ public class PostServiceImpl implements PostService {
         Page<Post> likedPosts = postRepository.findPostsLikedByUser(userId, pageable);
         
         // 转换为 PostDTO 列表
-        List<PostDTO> content = likedPosts.getContent().stream()
-                .map(post -> PostDTO.fromEntity(post, user))
-                .collect(Collectors.toList());
+        List<PostDTO> content = convertToPostDtos(likedPosts.getContent(), viewerUsername);
         
         // 返回分页响应
         return new PagedResponseDTO<>(
@@ -530,10 +586,11 @@ public class PostServiceImpl implements PostService {
     }
 
     @Override
-    public PagedResponseDTO<PostDTO> getFavoritedPostsByUserId(Long userId, int page, int size) {
+    public PagedResponseDTO<PostDTO> getFavoritedPostsByUserId(Long userId, int page, int size, String viewerUsername) {
         // 验证用户是否存在
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("User", "id", userId));
+        if (!userRepository.existsById(userId)) {
+            throw new ResourceNotFoundException("User", "id", userId);
+        }
         
         // 创建分页请求
         Pageable pageable = PageRequest.of(page, size, Sort.by("createdAt").descending());
@@ -542,9 +599,7 @@ public class PostServiceImpl implements PostService {
         Page<Post> favoritedPosts = postRepository.findPostsFavoritedByUser(userId, pageable);
         
         // 转换为 PostDTO 列表
-        List<PostDTO> content = favoritedPosts.getContent().stream()
-                .map(post -> PostDTO.fromEntity(post, user))
-                .collect(Collectors.toList());
+        List<PostDTO> content = convertToPostDtos(favoritedPosts.getContent(), viewerUsername);
         
         // 返回分页响应
         return new PagedResponseDTO<>(
@@ -557,8 +612,17 @@ public class PostServiceImpl implements PostService {
         );
     }
 
+    // 批量转换为 PostDTO，整页只查询一次当前浏览者的点赞和收藏状态
+    private List<PostDTO> convertToPostDtos(List<Post> posts, String viewerUsername) {
+        List<Long> postIds = posts.stream().map(Post::getId).collect(Collectors.toList());
+        PostReactionFlags flags = getReactionFlags(postIds, resolveUserId(viewerUsername));
+        return posts.stream()
+                .map(post -> PostDTO.fromEntity(post, flags.isLiked(post.getId()), flags.isFavorited(post.getId())))
+                .collect(Collectors.toList());
+    }
+
     @Override
-    public Page<PostResponse> searchPosts(String query, Pageable pageable) {
+    public Page<PostResponse> searchPosts(String query, Pageable pageable, String username) {
         if (query == null || query.trim().isEmpty()) {
             return new PageImpl<>(new ArrayList<>());
         }
@@ -571,7 +635,7 @@ public class PostServiceImpl implements PostService {
                 Long postId = Long.parseLong(trimmedQuery);
                 Post post = postRepository.findById(postId).orElse(null);
                 if (post != null) {
-                    List<PostResponse> result = List.of(convertToDto(post, null));
+                    List<PostResponse> result = List.of(convertToDto(post, username));
                     return new PageImpl<>(result, pageable, 1);
                 }
             } catch (NumberFormatException e) {
@@ -579,9 +643,16 @@ public class PostServiceImpl implements PostService {
             }
         }
         
-        // 否则，执行文本搜索
-        Page<Post> posts = postRepository.findByTitleContainingOrContentContaining(trimmedQuery, trimmedQuery, pageable);
-        return posts.map(post -> convertToDto(post, null));
+        // 索引尚未构建完成时回退到数据库模糊查询
+        if (!postSearchIndex.isReady()) {
+            Page<Post> posts = postRepository.findByTitleContainingOrContentContaining(trimmedQuery, trimmedQuery, pageable);
+            return toResponsePage(posts, username);
+        }
+        
+        // 从倒排索引取出按相关度排序的一页ID，再一次性加载这些帖子
+        PostSearchIndex.SearchHits hits = postSearchIndex.search(trimmedQuery, pageable.getOffset(), pageable.getPageSize());
+        List<Post> posts = loadInOrder(hits.getPostIds());
+        return new PageImpl<>(convertToDtos(posts, resolveUserId(username)), pageable, hits.getTotal());
     }
     
     /**
@@ -601,60 +672,31 @@ public class PostServiceImpl implements PostService {
     }
     
     @Override
-    public Page<PostResponse> getHotPosts(Pageable pageable) {
-        // 获取所有帖子
-        List<Post> allPosts = postRepository.findAll();
-        
-        // 当前时间，用于计算时间衰减因子
-        LocalDateTime now = LocalDateTime.now();
-        
-        // 为每个帖子计算热度分数
-        List<PostWithScore> postsWithScores = allPosts.stream()
-                .map(post -> {
-                    // 获取各项统计数据
-                    int views = post.getStats() != null ? post.getStats().getViewCount() : 0;
-                    int likes = post.getStats() != null ? post.getStats().getLikeCount() : 0;
-                    int favorites = post.getStats() != null ? post.getStats().getFavoriteCount() : 0;
-                    int comments = post.getStats() != null ? post.getStats().getCommentCount() : 0;
-                    
-                    // 计算基础热度分数: views*1 + likes*3 + favorites*5 + comments*8
-                    double baseScore = views + (likes * 3) + (favorites * 5) + (comments * 8);
-                    
-                    // 计算时间衰减因子
-                    // 使用帖子创建时间与当前时间之间的小时差作为衰减基础
-                    double hoursElapsed = 
-                        post.getCreatedAt() != null ?
-                        java.time.Duration.between(post.getCreatedAt(), now).toHours() : 0;
-                    
-                    // 使用对数衰减公式: score / (1 + log(1 + hoursElapsed))
-                    // 这确保新帖子有较高权重，但随时间推移热度逐渐降低
-                    double decayFactor = 1 + Math.log1p(hoursElapsed / 24); // 使用天数，而不是小时
-                    double finalScore = baseScore / decayFactor;
-                    
-                    return new PostWithScore(post, finalScore);
-                })
-                .sorted(Comparator.comparing(PostWithScore::getScore).reversed()) // 按分数从高到低排序
-                .collect(Collectors.toList());
-        
-        // 手动分页
-        int start = (int) pageable.getOffset();
-        int end = Math.min((start + pageable.getPageSize()), postsWithScores.size());
+    public Page<PostResponse> getHotPosts(Pageable pageable, String username) {
+        // 从热榜索引读取当前页的帖子ID
+        List<Long> rankedIds = hotPostRankingService.getRankedPostIds(pageable.getOffset(), pageable.getPageSize());
+        long total = hotPostRankingService.size();
         
-        if (start > postsWithScores.size()) {
-            return new PageImpl<>(new ArrayList<>(), pageable, postsWithScores.size());
+        if (rankedIds.isEmpty()) {
+            return new PageImpl<>(new ArrayList<>(), pageable, total);
         }
         
-        List<Post> pagedPosts = postsWithScores.subList(start, end)
-                .stream()
-                .map(PostWithScore::getPost)
-                .collect(Collectors.toList());
+        List<PostResponse> postResponses = convertToDtos(loadInOrder(rankedIds), resolveUserId(username));
         
-        // 将Post转换为PostResponse
-        List<PostResponse> postResponses = pagedPosts.stream()
-                .map(post -> convertToDto(post, null))
+        return new PageImpl<>(postResponses, pageable, total);
+    }
+    
+    // 一次批量查询给定ID的帖子，并按ID列表的顺序输出，已不存在的帖子被跳过
+    private List<Post> loadInOrder(List<Long> postIds) {
+        if (postIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, Post> postsById = postRepository.findAllWithDetailsByIdIn(postIds).stream()
+                .collect(Collectors.toMap(Post::getId, post -> post));
+        return postIds.stream()
+                .map(postsById::get)
+                .filter(Objects::nonNull)
                 .collect(Collectors.toList());
-        
-        return new PageImpl<>(postResponses, pageable, postsWithScores.size());
     }
     
     @Override
@@ -662,25 +704,6 @@ public class PostServiceImpl implements PostService {
         return postRepository.findAll();
     }
     
-    // 帮助类：用于存储帖子及其热度分数
-    private static class PostWithScore {
-        private final Post post;
-        private final double score;
-        
-        public PostWithScore(Post post, double score) {
-            this.post = post;
-            this.score = score;
-        }
-        
-        public Post getPost() {
-            return post;
-        }
-        
-        public double getScore() {
-            return score;
-        }
-    }
-    
     /**
      * 触发所有Agent对新帖子的自动点赞
      * @param post 新创建的帖子
@@ -1,25 +1,33 @@
 package com.jinshuxqm.community.service.impl;
 
+import com.jinshuxqm.community.dto.ConversationCursor;
 import com.jinshuxqm.community.dto.ConversationDTO;
+import com.jinshuxqm.community.dto.CursorPageDTO;
 import com.jinshuxqm.community.dto.PrivateMessageDTO;
 import com.jinshuxqm.community.exception.ResourceNotFoundException;
+import com.jinshuxqm.community.model.ConversationInbox;
 import com.jinshuxqm.community.model.MessageConversation;
 import com.jinshuxqm.community.model.PrivateMessage;
 import com.jinshuxqm.community.model.User;
+import com.jinshuxqm.community.repository.ConversationInboxRepository;
 import com.jinshuxqm.community.repository.MessageConversationRepository;
 import com.jinshuxqm.community.repository.PrivateMessageRepository;
 import com.jinshuxqm.community.repository.UserRepository;
+import com.jinshuxqm.community.service.PrivateMessageIngestor;
 import com.jinshuxqm.community.service.PrivateMessageService;
 import com.jinshuxqm.community.service.SseService;
+import com.jinshuxqm.community.service.UnreadCounterStore;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.List;
-import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Service
@@ -29,32 +37,15 @@ public class PrivateMessageServiceImpl implements PrivateMessageService {
     private final UserRepository userRepository;
     private final PrivateMessageRepository privateMessageRepository;
     private final MessageConversationRepository conversationRepository;
+    private final ConversationInboxRepository conversationInboxRepository;
     private final SseService sseService;
+    private final UnreadCounterStore unreadCounterStore;
+    private final PrivateMessageIngestor privateMessageIngestor;
 
     @Override
-    @Transactional
     public PrivateMessageDTO sendMessage(Long senderId, Long receiverId, String content) {
-        User sender = userRepository.findById(senderId)
-                .orElseThrow(() -> new ResourceNotFoundException("发送者不存在"));
-        
-        User receiver = userRepository.findById(receiverId)
-                .orElseThrow(() -> new ResourceNotFoundException("接收者不存在"));
-        
-        // 创建并保存消息
-        PrivateMessage message = new PrivateMessage();
-        message.setSender(sender);
-        message.setReceiver(receiver);
-        message.setContent(content);
-        
-        PrivateMessage savedMessage = privateMessageRepository.save(message);
-        
-        // 更新或创建会话
-        updateConversation(savedMessage);
-        
-        // 通过SSE发送实时通知
-        sseService.sendPrivateMessageEvent(receiverId, PrivateMessageDTO.fromEntity(savedMessage));
-        
-        return PrivateMessageDTO.fromEntity(savedMessage);
+        // 由写入管道把同一时段的消息合并为一个事务批量写入，提交后返回并推送通知
+        return privateMessageIngestor.send(senderId, receiverId, content);
     }
 
     @Override
@@ -75,108 +66,113 @@ public class PrivateMessageServiceImpl implements PrivateMessageService {
         return new PageImpl<>(dtos, pageable, messages.getTotalElements());
     }
 
+    @Override
+    public CursorPageDTO<PrivateMessageDTO> getConversationHistory(Long userId, Long conversationId, Long beforeId, int size) {
+        getConversationPartnerId(userId, conversationId);
+        
+        size = Math.max(size, 1);
+        // 多取一条用于判断是否还有下一页
+        List<PrivateMessageDTO> rows = privateMessageRepository.findHistoryBefore(conversationId,
+                beforeId != null ? beforeId : Long.MAX_VALUE, PageRequest.of(0, size + 1));
+        
+        boolean hasNext = rows.size() > size;
+        List<PrivateMessageDTO> page = hasNext ? rows.subList(0, size) : rows;
+        String nextCursor = hasNext ? String.valueOf(page.get(page.size() - 1).getId()) : null;
+        return new CursorPageDTO<>(page, nextCursor, hasNext, size, null);
+    }
+
+    @Override
+    public Long getConversationPartnerId(Long userId, Long conversationId) {
+        List<Object[]> participants = conversationRepository.findParticipantIds(conversationId);
+        if (!participants.isEmpty()) {
+            Long user1Id = (Long) participants.get(0)[0];
+            Long user2Id = (Long) participants.get(0)[1];
+            if (user1Id.equals(userId)) {
+                return user2Id;
+            }
+            if (user2Id.equals(userId)) {
+                return user1Id;
+            }
+        }
+        // 不是会话成员时和会话不存在一样处理
+        throw new ResourceNotFoundException("会话不存在");
+    }
+
     @Override
     public Page<ConversationDTO> getUserConversations(Long userId, Pageable pageable) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("用户不存在"));
-        
-        // 获取用户的所有会话
-        Page<MessageConversation> conversations = conversationRepository.findConversationsForUser(user, pageable);
-        
-        List<ConversationDTO> dtos = conversations.getContent().stream()
-                .map(conv -> ConversationDTO.fromEntity(conv, userId))
+        // 从用户的收件箱读取，不关联用户和消息表
+        return conversationInboxRepository.findByUserId(userId, pageable).map(ConversationDTO::fromInbox);
+    }
+
+    @Override
+    public CursorPageDTO<ConversationDTO> getUserConversationsByCursor(Long userId, String cursor, int size) {
+        ConversationCursor after = ConversationCursor.decode(cursor);
+        size = Math.max(size, 1);
+        // 多取一条用于判断是否还有下一页
+        List<ConversationInbox> rows = conversationInboxRepository.findPageAfter(
+                userId, after.getLastMessageTime(), after.getConversationId(), PageRequest.of(0, size + 1));
+        
+        boolean hasNext = rows.size() > size;
+        List<ConversationInbox> page = hasNext ? rows.subList(0, size) : rows;
+        String nextCursor = hasNext ? ConversationCursor.of(page.get(page.size() - 1)).encode() : null;
+        List<ConversationDTO> dtos = page.stream()
+                .map(ConversationDTO::fromInbox)
                 .collect(Collectors.toList());
-        
-        return new PageImpl<>(dtos, pageable, conversations.getTotalElements());
+        return new CursorPageDTO<>(dtos, nextCursor, hasNext, size, null);
     }
 
     @Override
     @Transactional
     public void markMessagesAsRead(Long userId, Long partnerId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("用户不存在"));
-        
-        User partner = userRepository.findById(partnerId)
-                .orElseThrow(() -> new ResourceNotFoundException("聊天对象不存在"));
+        // 以会话的最后一条消息作为已读位置，之后新到的消息保持未读
+        List<Object[]> state = conversationRepository.findReadStateByUserIds(
+                Math.min(userId, partnerId), Math.max(userId, partnerId));
+        if (state.isEmpty() || state.get(0)[1] == null) {
+            return;
+        }
+        Long conversationId = (Long) state.get(0)[0];
+        Long maxMessageId = (Long) state.get(0)[1];
+        
+        long unreadWriteSeq = unreadCounterStore.beginWrite();
+        // 一条语句标记partner发给user的未读消息，语句和参数数量与未读条数无关
+        int readCount = privateMessageRepository.markMessagesAsRead(userId, partnerId, maxMessageId);
+        if (readCount == 0) {
+            return;
+        }
         
-        // 查找partner发给user的所有未读消息
-        List<PrivateMessage> unreadMessages = privateMessageRepository.findBySenderAndReceiverAndReadFalse(partner, user);
+        // 更新会话和收件箱的未读计数、已读位置
+        conversationRepository.markReadForUser(conversationId, userId, readCount, maxMessageId);
+        conversationInboxRepository.decrementUnreadCount(userId, partnerId, readCount);
         
-        if (!unreadMessages.isEmpty()) {
-            // 获取消息ID列表
-            List<Long> messageIds = unreadMessages.stream()
-                    .map(PrivateMessage::getId)
-                    .collect(Collectors.toList());
-            
-            // 标记为已读
-            privateMessageRepository.markMessagesAsRead(messageIds);
-            
-            // 更新会话的未读计数
-            Optional<MessageConversation> conversation = conversationRepository.findConversationBetweenUsers(user, partner);
-            if (conversation.isPresent()) {
-                MessageConversation conv = conversation.get();
-                conv.resetUnreadCount();
-                conversationRepository.save(conv);
-            }
-        }
+        afterCommit(() -> {
+            int unreadCount = unreadCounterStore.add(userId, -readCount, unreadWriteSeq);
+            sseService.sendUnreadCountEvent(userId, unreadCount);
+        });
     }
 
     @Override
     public int getUnreadMessageCount(Long userId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("用户不存在"));
-        
-        return privateMessageRepository.findByReceiverAndReadFalse(user).size();
+        return unreadCounterStore.get(userId);
     }
 
     @Override
     public ConversationDTO getConversationDetails(Long userId, Long partnerId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("用户不存在"));
-        
-        User partner = userRepository.findById(partnerId)
-                .orElseThrow(() -> new ResourceNotFoundException("聊天对象不存在"));
-        
-        Optional<MessageConversation> conversation = conversationRepository.findConversationBetweenUsers(user, partner);
-        
-        return conversation.map(conv -> ConversationDTO.fromEntity(conv, userId))
+        return conversationInboxRepository.findByUserIdAndPartnerId(userId, partnerId)
+                .map(ConversationDTO::fromInbox)
                 .orElse(null);
     }
     
-    // 辅助方法：更新或创建会话
-    private void updateConversation(PrivateMessage message) {
-        User sender = message.getSender();
-        User receiver = message.getReceiver();
-        
-        // 确保user1的ID小于user2的ID，以便一致地找到会话
-        final User user1;
-        final User user2;
-        
-        if (sender.getId() > receiver.getId()) {
-            user1 = receiver;
-            user2 = sender;
-        } else {
-            user1 = sender;
-            user2 = receiver;
+    // 辅助方法：事务提交后执行，没有事务时立即执行
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
         }
-        
-        // 查找或创建会话
-        MessageConversation conversation = conversationRepository.findConversationBetweenUsers(user1, user2)
-                .orElseGet(() -> {
-                    MessageConversation newConv = new MessageConversation();
-                    newConv.setUser1(user1);
-                    newConv.setUser2(user2);
-                    return newConv;
-                });
-        
-        // 更新会话信息
-        conversation.updateLastMessage(message);
-        
-        // 如果当前用户不是发送者，则增加未读计数
-        if (!message.getReceiver().equals(user1)) {
-            conversation.incrementUnreadCount();
-        }
-        
-        conversationRepository.save(conversation);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 } 
\ No newline at end of file
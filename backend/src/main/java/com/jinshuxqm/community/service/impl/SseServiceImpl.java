@@ -1,108 +1,462 @@
 package com.jinshuxqm.community.service.impl;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.jinshuxqm.community.dto.PrivateMessageDTO;
+import com.jinshuxqm.community.dto.SseEnvelope;
+import com.jinshuxqm.community.service.SseBroadcastBus;
+import com.jinshuxqm.community.service.SseOverflowPolicy;
 import com.jinshuxqm.community.service.SseService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * SSE连接管理与事件分发
+ * 每个用户可同时保持多个连接（多个标签页/设备）。事件先发布到广播总线，
+ * 各节点收到后放入本节点持有的各连接的有界发送队列，由发送线程池异步推送，调用方不会被慢客户端阻塞。
+ * 队列满时按sse.overflow-policy处理。
+ *
+ * 空闲连接定时发送注释帧心跳，长时间无法写出的连接会被清理；
+ * 每个用户最近的事件保存在环形缓冲区中，客户端带Last-Event-ID重连时只补发错过的事件。
+ * 事件ID由本节点在事件记入缓冲区时按到达顺序分配，格式为"节点标识.序号"，同一用户的事件ID在本节点内单调递增；
+ * 重连到其他节点或本节点重启后，旧的ID无法对应本节点的缓冲区，直接发送resync事件
+ */
 @Service
 public class SseServiceImpl implements SseService {
     private static final Logger logger = LoggerFactory.getLogger(SseServiceImpl.class);
-    
-    // 存储用户ID和对应的SSE连接
-    private final Map<Long, SseEmitter> emitters = new ConcurrentHashMap<>();
-    
+
+    private static final String UNREAD_COUNT_EVENT = "unreadCount";
+    private static final String RESYNC_EVENT = "resync";
+
+    // 用户ID -> 该用户在本节点的所有连接
+    private final Map<Long, Set<SseConnection>> connections = new ConcurrentHashMap<>();
+
     // SSE连接的超时时间（毫秒）
     private static final long SSE_TIMEOUT = 3600000L; // 1小时
-    
+
+    private final AtomicLong connectionIds = new AtomicLong();
+
+    // 本节点标识，每次启动不同，作为事件ID的前缀
+    private final String nodeId = Long.toString(System.currentTimeMillis(), 36)
+            + Integer.toString(ThreadLocalRandom.current().nextInt(36 * 36 * 36), 36);
+
+    // 本节点的事件序号，在用户缓冲区的锁内分配，因此每个用户的事件序号按推送顺序递增
+    private final AtomicLong eventSeq = new AtomicLong();
+
+    // 统计
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private final AtomicLong coalescedEvents = new AtomicLong();
+    private final AtomicLong overflowDisconnects = new AtomicLong();
+    private final AtomicLong sentEvents = new AtomicLong();
+    private final AtomicLong reapedConnections = new AtomicLong();
+    private final AtomicLong replayedEvents = new AtomicLong();
+    private final AtomicLong resyncs = new AtomicLong();
+
+    @Autowired
+    private SseBroadcastBus broadcastBus;
+
+    @Value("${sse.sender-threads:4}")
+    private int senderThreads;
+
+    @Value("${sse.queue-capacity:256}")
+    private int queueCapacity;
+
+    @Value("${sse.overflow-policy:COALESCE}")
+    private SseOverflowPolicy overflowPolicy;
+
+    @Value("${sse.idle-timeout-ms:60000}")
+    private long idleTimeoutMs;
+
+    @Value("${sse.replay-buffer-size:64}")
+    private int replayBufferSize;
+
+    @Value("${sse.replay-retention-minutes:10}")
+    private long replayRetentionMinutes;
+
+    private ExecutorService sender;
+
+    // 用户ID -> 最近事件的环形缓冲区
+    private Cache<Long, EventRing> replayBuffers;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        sender = Executors.newFixedThreadPool(senderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "sse-sender-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        replayBuffers = Caffeine.newBuilder()
+                .expireAfterAccess(replayRetentionMinutes, TimeUnit.MINUTES)
+                .maximumSize(10000)
+                .build();
+        broadcastBus.subscribe(this::deliverLocal);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdownNow();
+    }
+
     @Override
     public SseEmitter createConnection(Long userId) {
-        // 如果已存在连接，先关闭
-        SseEmitter emitter = emitters.get(userId);
-        if (emitter != null) {
-            emitter.complete();
-        }
-        
-        // 创建新的SSE连接
-        emitter = new SseEmitter(SSE_TIMEOUT);
-        
+        return createConnection(userId, null);
+    }
+
+    @Override
+    public SseEmitter createConnection(Long userId, String lastEventId) {
+        SseEmitter emitter = new SseEmitter(SSE_TIMEOUT);
+        SseConnection connection = new SseConnection(connectionIds.incrementAndGet(), userId, emitter);
+
         // 设置连接完成或超时的回调
-        emitter.onCompletion(() -> emitters.remove(userId));
-        emitter.onTimeout(() -> emitters.remove(userId));
+        emitter.onCompletion(() -> removeConnection(connection));
+        emitter.onTimeout(() -> removeConnection(connection));
         emitter.onError(e -> {
-            logger.error("Error in SSE connection for user {}: {}", userId, e.getMessage());
-            emitters.remove(userId);
+            logger.error("Error in SSE connection {} for user {}: {}", connection.id, userId, e.getMessage());
+            removeConnection(connection);
         });
-        
-        // 存储连接
-        emitters.put(userId, emitter);
-        
-        // 发送初始连接事件
-        try {
-            emitter.send(SseEmitter.event()
-                    .name("connect")
-                    .data("Connected successfully"));
-        } catch (IOException e) {
-            logger.error("Error sending initial SSE event to user {}: {}", userId, e.getMessage());
-            emitter.completeWithError(e);
-            return new SseEmitter();
-        }
-        
+
+        EventRing ring = replayBuffers.get(userId, id -> new EventRing(eventSeq.get()));
+        // 在缓冲区锁内登记连接并补发，保证补发的事件和之后的实时事件不重复、不遗漏、顺序一致
+        synchronized (ring) {
+            connections.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).add(connection);
+
+            // 发送初始连接事件
+            enqueue(connection, new OutboundEvent(null, "connect", "Connected successfully"));
+
+            if (lastEventId != null && !lastEventId.isBlank()) {
+                Long lastSeq = parseLocalSeq(lastEventId.trim());
+                List<RingEntry> missed = lastSeq != null ? ring.since(lastSeq) : null;
+                if (missed == null) {
+                    resyncs.incrementAndGet();
+                    enqueue(connection, new OutboundEvent(null, RESYNC_EVENT, lastEventId));
+                } else {
+                    replayedEvents.addAndGet(missed.size());
+                    missed.forEach(entry -> enqueue(connection, toOutbound(entry)));
+                }
+            }
+        }
+
         return emitter;
     }
-    
+
     @Override
-    public void sendPrivateMessageEvent(Long userId, PrivateMessageDTO message) {
-        SseEmitter emitter = emitters.get(userId);
-        if (emitter != null) {
-            try {
-                emitter.send(SseEmitter.event()
-                        .name("privateMessage")
-                        .data(message));
-                
-                // 同时发送未读计数更新
-                sendUnreadCountEvent(userId, -1); // -1表示需要客户端自行查询
-            } catch (IOException e) {
-                logger.error("Error sending private message event to user {}: {}", userId, e.getMessage());
-                emitters.remove(userId);
-                emitter.completeWithError(e);
-            }
-        }
+    public void sendPrivateMessageEvent(Long userId, PrivateMessageDTO message, int unreadCount) {
+        broadcastBus.publish(new SseEnvelope(userId, "privateMessage", message));
+
+        // 同时发送未读计数更新
+        sendUnreadCountEvent(userId, unreadCount);
     }
-    
+
     @Override
     public void sendUnreadCountEvent(Long userId, int unreadCount) {
-        SseEmitter emitter = emitters.get(userId);
-        if (emitter != null) {
-            try {
-                emitter.send(SseEmitter.event()
-                        .name("unreadCount")
-                        .data(unreadCount));
-            } catch (IOException e) {
-                logger.error("Error sending unread count event to user {}: {}", userId, e.getMessage());
-                emitters.remove(userId);
-                emitter.completeWithError(e);
-            }
-        }
+        broadcastBus.publish(new SseEnvelope(userId, UNREAD_COUNT_EVENT, unreadCount));
     }
-    
+
     @Override
     public void closeConnection(Long userId) {
-        SseEmitter emitter = emitters.get(userId);
-        if (emitter != null) {
-            emitter.complete();
-            emitters.remove(userId);
+        Set<SseConnection> userConnections = connections.remove(userId);
+        if (userConnections != null) {
+            userConnections.forEach(connection -> connection.emitter.complete());
+        }
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        int connectionCount = 0;
+        long queuedEvents = 0;
+        int maxQueueDepth = 0;
+        for (Set<SseConnection> userConnections : connections.values()) {
+            for (SseConnection connection : userConnections) {
+                int depth = connection.depth();
+                connectionCount++;
+                queuedEvents += depth;
+                maxQueueDepth = Math.max(maxQueueDepth, depth);
+            }
         }
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("connectedUsers", connections.size());
+        stats.put("connections", connectionCount);
+        stats.put("queuedEvents", queuedEvents);
+        stats.put("maxQueueDepth", maxQueueDepth);
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("overflowPolicy", overflowPolicy);
+        stats.put("sentEvents", sentEvents.get());
+        stats.put("droppedEvents", droppedEvents.get());
+        stats.put("coalescedEvents", coalescedEvents.get());
+        stats.put("overflowDisconnects", overflowDisconnects.get());
+        stats.put("reapedConnections", reapedConnections.get());
+        stats.put("replayBuffers", replayBuffers.estimatedSize());
+        stats.put("replayedEvents", replayedEvents.get());
+        stats.put("resyncs", resyncs.get());
+        return stats;
     }
-    
+
     // 获取当前活跃连接数
     public int getActiveConnectionCount() {
-        return emitters.size();
+        return connections.values().stream().mapToInt(Set::size).sum();
+    }
+
+    /**
+     * 定时向空闲连接发送心跳注释帧，写失败的连接在发送时即被移除；
+     * 超过空闲超时仍未成功写出任何数据的连接视为已失效，直接清理
+     */
+    @Scheduled(fixedDelayString = "${sse.heartbeat-interval-ms:25000}")
+    public void heartbeat() {
+        long now = System.currentTimeMillis();
+        for (Set<SseConnection> userConnections : connections.values()) {
+            for (SseConnection connection : userConnections) {
+                if (now - connection.lastWriteTime > idleTimeoutMs) {
+                    reapedConnections.incrementAndGet();
+                    logger.info("Reaping stale SSE connection {} for user {}", connection.id, connection.userId);
+                    removeConnection(connection);
+                    connection.emitter.complete();
+                } else if (connection.depth() == 0) {
+                    // 队列中有待发事件时无需心跳
+                    enqueue(connection, OutboundEvent.heartbeat());
+                }
+            }
+        }
+    }
+
+    // 广播总线回调：分配本节点的事件ID并记入用户的补发缓冲区，再推送给本节点上该用户的所有连接
+    private void deliverLocal(SseEnvelope envelope) {
+        EventRing ring = replayBuffers.get(envelope.getUserId(), id -> new EventRing(eventSeq.get()));
+        synchronized (ring) {
+            RingEntry entry = new RingEntry(eventSeq.incrementAndGet(), envelope);
+            ring.add(entry, replayBufferSize);
+            Set<SseConnection> userConnections = connections.get(envelope.getUserId());
+            if (userConnections == null || userConnections.isEmpty()) {
+                return;
+            }
+            for (SseConnection connection : userConnections) {
+                enqueue(connection, toOutbound(entry));
+            }
+        }
+    }
+
+    private OutboundEvent toOutbound(RingEntry entry) {
+        return new OutboundEvent(nodeId + "." + entry.seq, entry.envelope.getEvent(), entry.envelope.getData());
+    }
+
+    // 解析本节点发出的事件ID，其他节点或本节点重启前发出的ID返回null
+    private Long parseLocalSeq(String eventId) {
+        int dot = eventId.lastIndexOf('.');
+        if (dot <= 0 || !eventId.substring(0, dot).equals(nodeId)) {
+            return null;
+        }
+        try {
+            return Long.parseLong(eventId.substring(dot + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // 放入连接的发送队列，同一连接同时只有一个线程在发送，保证事件顺序
+    private void enqueue(SseConnection connection, OutboundEvent event) {
+        boolean disconnect = false;
+        boolean schedule;
+        synchronized (connection) {
+            if (connection.closed) {
+                return;
+            }
+            if (overflowPolicy == SseOverflowPolicy.COALESCE && UNREAD_COUNT_EVENT.equals(event.name)
+                    && connection.replaceQueued(event)) {
+                // 队列中已有未读计数事件，直接替换为最新值
+                coalescedEvents.incrementAndGet();
+                return;
+            }
+            if (connection.outbound.size() >= queueCapacity) {
+                if (overflowPolicy == SseOverflowPolicy.DISCONNECT) {
+                    disconnect = true;
+                } else {
+                    connection.outbound.pollFirst();
+                    droppedEvents.incrementAndGet();
+                }
+            }
+            if (!disconnect) {
+                connection.outbound.addLast(event);
+            }
+            schedule = !disconnect && !connection.draining;
+            if (schedule) {
+                connection.draining = true;
+            }
+        }
+
+        if (disconnect) {
+            overflowDisconnects.incrementAndGet();
+            logger.warn("SSE queue overflow for user {} on connection {}, disconnecting", connection.userId, connection.id);
+            removeConnection(connection);
+            connection.emitter.complete();
+        } else if (schedule) {
+            sender.execute(() -> drain(connection));
+        }
+    }
+
+    private void drain(SseConnection connection) {
+        while (true) {
+            OutboundEvent event;
+            synchronized (connection) {
+                event = connection.outbound.pollFirst();
+                if (event == null || connection.closed) {
+                    connection.draining = false;
+                    return;
+                }
+            }
+            try {
+                connection.emitter.send(event.toSseEvent());
+                connection.lastWriteTime = System.currentTimeMillis();
+                if (event.name != null) {
+                    sentEvents.incrementAndGet();
+                }
+            } catch (IOException | IllegalStateException e) {
+                logger.error("Error sending SSE event to user {} on connection {}: {}",
+                        connection.userId, connection.id, e.getMessage());
+                removeConnection(connection);
+                connection.emitter.completeWithError(e);
+                return;
+            }
+        }
+    }
+
+    private void removeConnection(SseConnection connection) {
+        synchronized (connection) {
+            connection.closed = true;
+            connection.outbound.clear();
+        }
+        connections.computeIfPresent(connection.userId, (userId, userConnections) -> {
+            userConnections.remove(connection);
+            return userConnections.isEmpty() ? null : userConnections;
+        });
+    }
+
+    // 待发送的事件；name为null时是心跳注释帧
+    private static class OutboundEvent {
+        private final String id;
+        private final String name;
+        private Object data;
+
+        OutboundEvent(String id, String name, Object data) {
+            this.id = id;
+            this.name = name;
+            this.data = data;
+        }
+
+        static OutboundEvent heartbeat() {
+            return new OutboundEvent(null, null, null);
+        }
+
+        SseEmitter.SseEventBuilder toSseEvent() {
+            if (name == null) {
+                return SseEmitter.event().comment("heartbeat");
+            }
+            SseEmitter.SseEventBuilder builder = SseEmitter.event().name(name).data(data);
+            if (id != null) {
+                builder.id(id);
+            }
+            return builder;
+        }
+    }
+
+    // 单个SSE连接及其发送队列，队列和状态字段由连接对象自身的锁保护
+    private static class SseConnection {
+        private final long id;
+        private final Long userId;
+        private final SseEmitter emitter;
+        private final ArrayDeque<OutboundEvent> outbound = new ArrayDeque<>();
+        private boolean draining;
+        private boolean closed;
+        // 最近一次成功写出的时间
+        private volatile long lastWriteTime = System.currentTimeMillis();
+
+        SseConnection(long id, Long userId, SseEmitter emitter) {
+            this.id = id;
+            this.userId = userId;
+            this.emitter = emitter;
+        }
+
+        synchronized int depth() {
+            return outbound.size();
+        }
+
+        // 用新事件的数据替换队列中同名的事件，调用方需持有锁
+        boolean replaceQueued(OutboundEvent event) {
+            Iterator<OutboundEvent> iterator = outbound.descendingIterator();
+            while (iterator.hasNext()) {
+                OutboundEvent queued = iterator.next();
+                if (event.name.equals(queued.name)) {
+                    queued.data = event.data;
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // 补发缓冲区中的事件及本节点分配的序号
+    private static class RingEntry {
+        private final long seq;
+        private final SseEnvelope envelope;
+
+        RingEntry(long seq, SseEnvelope envelope) {
+            this.seq = seq;
+            this.envelope = envelope;
+        }
+    }
+
+    // 单个用户最近事件的环形缓冲区，调用方需持有缓冲区对象的锁
+    private static class EventRing {
+        private final ArrayDeque<RingEntry> events = new ArrayDeque<>();
+        // 该序号及之前的事件不在缓冲区中
+        private long floor;
+
+        EventRing(long floor) {
+            this.floor = floor;
+        }
+
+        void add(RingEntry entry, int capacity) {
+            events.addLast(entry);
+            while (events.size() > capacity) {
+                floor = events.pollFirst().seq;
+            }
+        }
+
+        // 返回lastSeq之后的事件；部分事件已不在缓冲区中时返回null
+        List<RingEntry> since(long lastSeq) {
+            if (lastSeq < floor) {
+                return null;
+            }
+            List<RingEntry> missed = new ArrayList<>();
+            for (RingEntry entry : events) {
+                if (entry.seq > lastSeq) {
+                    missed.add(entry);
+                }
+            }
+            return missed;
+        }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,151 @@
+package com.jinshuxqm.community.service;
+
+import com.jinshuxqm.community.model.Post;
+import com.jinshuxqm.community.repository.PostRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PostSearchIndexTest {
+
+    @Test
+    void tokenizeSplitsLatinRunsAndCjkBigrams() {
+        assertThat(PostSearchIndex.tokenize("Spring Boot入门教程"))
+                .containsExactly("spring", "boot", "入门", "门教", "教程");
+    }
+
+    @Test
+    void tokenizeKeepsSingleCjkCharacterQuery() {
+        assertThat(PostSearchIndex.tokenize("爱")).containsExactly("爱");
+    }
+
+    @Test
+    void tokenizeForIndexAddsCjkUnigrams() {
+        List<String> terms = PostSearchIndex.tokenizeForIndex("我爱你");
+        assertThat(terms).contains("我爱", "爱你", "我", "爱", "你");
+    }
+
+    @Test
+    void singleCharacterQueryMatchesTermInsideLongerRun() {
+        assertThat(PostSearchIndex.tokenizeForIndex("我爱你"))
+                .containsAll(PostSearchIndex.tokenize("爱"));
+    }
+
+    @Test
+    void titleMatchRanksAboveLongContentMatch() {
+        PostSearchIndex index = new PostSearchIndex();
+        index.index(post(1L, "日常随笔", "今天读了一些关于 spring 的文章，还有很多其他内容需要整理和记录下来", null));
+        index.index(post(2L, "Spring 入门", "简单介绍", null));
+        index.index(post(3L, "无关帖子", "完全不相关的内容", null));
+
+        PostSearchIndex.SearchHits hits = index.search("spring", 0, 10);
+
+        assertThat(hits.getPostIds()).containsExactly(2L, 1L);
+        assertThat(hits.getTotal()).isEqualTo(2);
+    }
+
+    @Test
+    void allQueryTermsMustMatchAndPagingUsesOffset() {
+        PostSearchIndex index = new PostSearchIndex();
+        index.index(post(1L, "spring boot", "", null));
+        index.index(post(2L, "spring", "", null));
+        index.index(post(3L, "spring boot boot", "", null));
+
+        assertThat(index.search("spring boot", 0, 10).getPostIds()).containsExactlyInAnyOrder(1L, 3L);
+        assertThat(index.search("spring", 1, 1).getPostIds()).hasSize(1);
+        assertThat(index.search("spring", 1, 1).getTotal()).isEqualTo(3);
+    }
+
+    @Test
+    void updateReplacesTermsAndIgnoresStaleVersion() {
+        PostSearchIndex index = new PostSearchIndex();
+        LocalDateTime now = LocalDateTime.now();
+        index.index(post(1L, "java", "", now.minusMinutes(1)));
+        index.index(post(1L, "kotlin", "", now));
+        index.index(post(1L, "scala", "", now.minusMinutes(2)));
+
+        assertThat(index.search("java", 0, 10).getPostIds()).isEmpty();
+        assertThat(index.search("scala", 0, 10).getPostIds()).isEmpty();
+        assertThat(index.search("kotlin", 0, 10).getPostIds()).containsExactly(1L);
+    }
+
+    @Test
+    void removedPostIsNoLongerReturned() {
+        PostSearchIndex index = new PostSearchIndex();
+        index.index(post(1L, "java", "", null));
+        index.index(post(2L, "java", "", null));
+
+        index.remove(1L);
+
+        PostSearchIndex.SearchHits hits = index.search("java", 0, 10);
+        assertThat(hits.getPostIds()).containsExactly(2L);
+        assertThat(hits.getTotal()).isEqualTo(1);
+    }
+
+    @Test
+    void cjkQueriesMatchByUnigramAndBigram() {
+        PostSearchIndex index = new PostSearchIndex();
+        index.index(post(1L, "我爱你中国", "", null));
+        index.index(post(2L, "爱情故事", "", null));
+
+        assertThat(index.search("爱", 0, 10).getPostIds()).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(index.search("中国", 0, 10).getPostIds()).containsExactly(1L);
+        assertThat(index.search("爱情", 0, 10).getPostIds()).containsExactly(2L);
+        // 二字词按相邻字切分，字序不同不匹配
+        assertThat(index.search("国中", 0, 10).getPostIds()).isEmpty();
+    }
+
+    @Test
+    void lastLatinTermMatchesAsPrefix() {
+        PostSearchIndex index = new PostSearchIndex();
+        index.index(post(1L, "spring boot", "", null));
+        index.index(post(2L, "springfield", "", null));
+        index.index(post(3L, "summer", "", null));
+
+        assertThat(index.search("spr", 0, 10).getPostIds()).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(index.search("spring bo", 0, 10).getPostIds()).containsExactly(1L);
+        // 只有最后一个词按前缀匹配
+        assertThat(index.search("spr boot", 0, 10).getPostIds()).isEmpty();
+    }
+
+    @Test
+    void postDeletedDuringInitialLoadIsNotIndexed() {
+        PostSearchIndex index = new PostSearchIndex();
+        PostRepository postRepository = mock(PostRepository.class);
+        ReflectionTestUtils.setField(index, "postRepository", postRepository);
+        when(postRepository.findIdsAfter(eq(0L), any(Pageable.class))).thenReturn(List.of(1L, 2L));
+        when(postRepository.findIdsAfter(eq(2L), any(Pageable.class))).thenReturn(Collections.emptyList());
+        when(postRepository.findAllWithDetailsByIdIn(anyList())).thenAnswer(invocation -> {
+            // 批次ID读出之后、帖子加入索引之前，帖子1被删除
+            index.remove(1L);
+            return List.of(post(1L, "java", "", null), post(2L, "java", "", null));
+        });
+
+        index.onApplicationReady();
+
+        assertThat(index.isReady()).isTrue();
+        assertThat(index.search("java", 0, 10).getPostIds()).containsExactly(2L);
+    }
+
+    private static Post post(Long id, String title, String content, LocalDateTime updatedAt) {
+        Post post = new Post();
+        post.setId(id);
+        post.setTitle(title);
+        post.setContent(content);
+        post.setTags(new HashSet<>());
+        post.setUpdatedAt(updatedAt);
+        return post;
+    }
+}